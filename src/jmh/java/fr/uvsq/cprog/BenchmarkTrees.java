@@ -0,0 +1,64 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Synthetic file trees and notes files used as fixtures by the benchmarks.
+ */
+public class BenchmarkTrees {
+  static final int FANOUT = 1000; // entries of each directory of a tree
+  static final String TARGET = "target.txt"; // name of the single file found by the searches
+
+  /**
+   * Create a tree of the given number of empty files, FANOUT files a directory,
+   * one file named TARGET being in the last directory.
+   *
+   * @param entries number of files
+   * @return the root of the tree, in the temporary directory
+   * @throws IOException if the tree could not be created
+   */
+  public static Path createTree(int entries) throws IOException {
+    Path root = Files.createTempDirectory("bench-tree");
+    Path directory = root;
+    for (int i = 0; i < entries; i++) {
+      if (i % FANOUT == 0) {
+        directory = Files.createDirectory(root.resolve("d" + (i / FANOUT)));
+      }
+      Files.createFile(directory.resolve(i == entries - 1 ? TARGET : "f" + i + ".txt"));
+    }
+    return root;
+  }
+
+  /**
+   * Create a directory whose file 'notes' holds the given number of notes.
+   *
+   * @param entries number of notes
+   * @return the directory, in the temporary directory
+   * @throws IOException if the file could not be written
+   */
+  public static Path createNotes(int entries) throws IOException {
+    Path directory = Files.createTempDirectory("bench-notes");
+    try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(Notes.FILENAME),
+        StandardCharsets.UTF_8)) {
+      for (int i = 0; i < entries; i++) {
+        writer.write("file" + i + ".txt" + Notes.UNIT_SEPARATOR + "note number " + i
+            + Notes.RECORD_SEPARATOR);
+      }
+    }
+    return directory;
+  }
+
+  /**
+   * Delete the given tree.
+   *
+   * @param root the tree to delete
+   * @throws IOException if a file could not be deleted
+   */
+  public static void delete(Path root) throws IOException {
+    Directory.removeFile(root);
+  }
+}
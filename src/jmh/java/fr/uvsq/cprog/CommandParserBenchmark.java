@@ -0,0 +1,47 @@
+package fr.uvsq.cprog;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the parsing of command lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+  @Param({"12", "visu", "3 + a note with several words", "find glob:*.md", "2 cuy"})
+  String commandLine;
+
+  /**
+   * Parse a line with the constructor, an invalid line throwing its error.
+   */
+  @Benchmark
+  public Object construct() {
+    try {
+      return new CommandParser(commandLine);
+    } catch (IllegalArgumentException exception) {
+      return exception;
+    }
+  }
+
+  /**
+   * Parse a line, an invalid line giving its error in the result.
+   */
+  @Benchmark
+  public CommandParser parse() {
+    return CommandParser.parse(commandLine);
+  }
+}
@@ -0,0 +1,107 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the searches, the listings and the copies of Directory on synthetic trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  int entries;
+
+  Path root;
+  Path source;
+  Directory tree;
+  Directory leaf;
+  Directory destination;
+
+  /**
+   * Create the tree, a file to paste and an empty directory to paste it into.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    root = BenchmarkTrees.createTree(entries);
+    tree = new Directory(root);
+    leaf = new Directory(root.resolve("d0"));
+    source = Files.write(root.resolve("source.bin"), new byte[64 * 1024]);
+    destination = new Directory(Files.createDirectory(root.resolve("paste")));
+  }
+
+  /**
+   * Delete the tree.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkTrees.delete(root);
+  }
+
+  /**
+   * Find the single file of a name in the whole tree.
+   */
+  @Benchmark
+  public long find() throws IOException {
+    return tree.find(BenchmarkTrees.TARGET).count();
+  }
+
+  /**
+   * Refresh a directory which did not change, only its modification time being read.
+   */
+  @Benchmark
+  public List<String> refreshUnchanged() {
+    leaf.refresh();
+    return leaf.files;
+  }
+
+  /**
+   * List again a directory of FANOUT files.
+   */
+  @Benchmark
+  public List<String> refreshLeaf() {
+    leaf.listing.invalidate();
+    leaf.refresh();
+    return leaf.files;
+  }
+
+  /**
+   * List again the root, holding one directory for FANOUT files.
+   */
+  @Benchmark
+  public List<String> refreshRoot() {
+    tree.listing.invalidate();
+    tree.refresh();
+    return tree.files;
+  }
+
+  /**
+   * Paste a file of 64 KB, the copy being deleted afterwards.
+   */
+  @Benchmark
+  public Path paste() throws IOException {
+    Path copy = destination.paste(source);
+    Files.delete(copy);
+    return copy;
+  }
+}
@@ -0,0 +1,84 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the loading and the saving of the notes of a directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotesBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  int entries;
+
+  Path directory;
+  Path otherDirectory;
+  Notes notes;
+  boolean toOther = false;
+
+  /**
+   * Create the file 'notes' and an empty directory where to write a full copy of it.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = BenchmarkTrees.createNotes(entries);
+    otherDirectory = Files.createDirectory(directory.resolve("other"));
+    notes = new Notes(directory.toString());
+  }
+
+  /**
+   * Wait for the compactions and delete the files.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Notes.awaitCompactions();
+    BenchmarkTrees.delete(directory);
+  }
+
+  /**
+   * Read the whole file 'notes'.
+   */
+  @Benchmark
+  public Notes load() {
+    return new Notes(directory.toString());
+  }
+
+  /**
+   * Change one note and append the change to the file.
+   */
+  @Benchmark
+  public boolean saveJournal() throws IOException {
+    notes.removeNote("file0.txt");
+    notes.addNote("file0.txt", "changed note");
+    return notes.saveNotes(directory.toString());
+  }
+
+  /**
+   * Write every note to a new file, alternately in two directories.
+   */
+  @Benchmark
+  public boolean saveFull() throws IOException {
+    toOther = !toOther;
+    return notes.saveNotes(toOther ? otherDirectory.toString() : directory.toString());
+  }
+}
@@ -0,0 +1,192 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Class to run commands read from a script or from the standard input without the interface,
+ * the results being written as text.
+ */
+public class BatchRunner extends CommandEngine {
+  static final int PRINT_LINES = 1024; // lines of a file read at once by visu
+
+  PrintStream out;
+  PrintStream err;
+  int errors = 0;
+
+  /**
+   * Creates a runner starting in the given directory.
+   *
+   * @param dirname name of the directory
+   * @param out where the results are written
+   * @param err where the errors are written
+   * @throws IOException if the directory doesn't exists
+   */
+  public BatchRunner(String dirname, PrintStream out, PrintStream err) throws IOException {
+    super(dirname);
+    this.out = out;
+    this.err = err;
+  }
+
+  /**
+   * Run every command read until the end of the input or an exit command,
+   * then save the notes and the index.
+   * The output is flushed only when no command is waiting to be read.
+   *
+   * @param input the commands, one a line
+   * @return the number of commands which failed
+   * @throws IOException if the input could not be read
+   */
+  public int run(BufferedReader input) throws IOException {
+    int lineNumber = 0;
+    String line;
+    try {
+      while ((line = input.readLine()) != null) {
+        lineNumber++;
+        if (!runLine(line, lineNumber)) {
+          break;
+        }
+        if (!input.ready()) {
+          out.flush();
+        }
+      }
+    } finally {
+      close();
+    }
+    return errors;
+  }
+
+  /**
+   * Parse and run one command, an error being written with its line number.
+   *
+   * @param line the command
+   * @param lineNumber number of the line in the input
+   * @return false if the command was exit
+   */
+  boolean runLine(String line, int lineNumber) {
+    CommandParser result = CommandParser.parse(line);
+    if (result.getCommand() == CommandParser.Commands.EXIT) {
+      return false;
+    }
+    try {
+      if (result.getCommand() != CommandParser.Commands.NOTHING || !result.isValid()) {
+        execute(result);
+      }
+    } catch (Exception exception) {
+      errors++;
+      err.println("line " + lineNumber + ": " + exception.getMessage());
+    }
+    return true;
+  }
+
+  @Override
+  void show(String title, List<String> lines) {
+    lines.forEach(out::println);
+  }
+
+  @Override
+  void stream(String title, String name, FindJob.Report report) throws IOException {
+    report.run(out::println, () -> false);
+  }
+
+  /**
+   * Paste the copied file, waiting for the end of the copy.
+   *
+   * @param job the copy to run
+   * @param directory where the copy is pasted
+   * @throws IOException if the copy failed
+   */
+  @Override
+  void paste(CopyJob job, Directory directory) throws IOException {
+    job.run();
+    pasted(job, directory);
+    if (job.state == CopyJob.State.FAILED) {
+      throw new IOException("Could not paste " + job.source.getFileName() + ": " + job.error);
+    }
+    out.println(job.status());
+  }
+
+  /**
+   * Write the path and the files of the new current directory.
+   */
+  @Override
+  void moved() {
+    currentDirectory.refresh();
+    out.println(currentDirectory.dirpath);
+    for (int ner = 0; ner < currentDirectory.files.size(); ner++) {
+      out.println(ner + " : " + currentDirectory.files.get(ner));
+    }
+  }
+
+  @Override
+  void warn(String message) {
+    err.println(message);
+  }
+
+  /**
+   * Run the commands of the batch mode only.
+   *
+   * @param result parsed command from CommandParser
+   * @throws Exception if the command failed
+   */
+  @Override
+  void runOther(CommandParser result) throws Exception {
+    switch (result.getCommand()) {
+      case SETNER:
+        out.println(currentNer + " : " + currentDirectory.getFilename(currentNer));
+        break;
+
+      case VISU:
+        refreshListing();
+        visu();
+        break;
+
+      default:
+        throw new IllegalArgumentException("Not available in batch mode.");
+    }
+  }
+
+  /**
+   * Write the content of the current file, as text or as a hexadecimal dump,
+   * a few pages at a time.
+   *
+   * @throws IOException if the file could not be read
+   */
+  private void visu() throws IOException {
+    Path path = currentDirectory.getFilepath(currentNer);
+    BasicFileAttributes attributes = currentDirectory.getAttributes(currentNer);
+    String type = fileTypes.detect(path, attributes);
+    if (!FileTypes.isViewable(type)) {
+      out.println(currentNer + " is not a text file but here is its size: "
+          + Files.size(path) + " bytes");
+      return;
+    }
+    try (Viewer viewer = FileTypes.showsAsText(type) ? new FilePager(path) : new HexViewer(path)) {
+      long first = 0;
+      List<String> lines;
+      while (!(lines = viewer.lines(first, PRINT_LINES)).isEmpty()) {
+        lines.forEach(out::println);
+        first += lines.size();
+      }
+    }
+  }
+
+  /**
+   * Save the notes and the index, the errors being written.
+   */
+  private void close() {
+    try {
+      save();
+    } catch (IOException exception) {
+      errors++;
+      err.println(exception.getMessage());
+    }
+    shutdown();
+    out.flush();
+  }
+}
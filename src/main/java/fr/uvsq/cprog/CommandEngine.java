@@ -0,0 +1,329 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Class running the commands on the current directory, shared by the interface and the batch mode.
+ * The subclasses give the output of the commands and run the commands specific to them.
+ */
+public abstract class CommandEngine {
+  static final int DU_LINES = 20; // largest subdirectories shown by du
+  static final String PASTE_VERIFY = "verify"; // option of paste checking the copies
+
+  Directory currentDirectory;
+  FileIndex index;
+  FileTypes fileTypes = new FileTypes();
+  DirectoryCache directories;
+  NotesDatabase notesDatabase;
+  DiskUsage diskUsage = new DiskUsage();
+  DuplicateFinder duplicateFinder = new DuplicateFinder();
+  int currentNer = -1;
+  Path file2copy = null;
+  boolean shouldCut = false;
+  boolean changed = false; // true if a command may have changed the current directory
+  Path statsFile = null; // where the metrics are written when the engine is saved
+
+  /**
+   * Creates an engine starting in the given directory.
+   *
+   * @param dirname name of the directory
+   * @throws IOException if the directory doesn't exists
+   */
+  public CommandEngine(String dirname) throws IOException {
+    // keep the file index up to date when the notes of a cached directory are written back
+    directories = new DirectoryCache(
+        directory -> index.update(directory.dirpath.resolve(Notes.FILENAME)));
+    currentDirectory = directories.get(Paths.get(dirname));
+    index = new FileIndex(currentDirectory.dirpath);
+    notesDatabase = new NotesDatabase(index);
+  }
+
+  /**
+   * Show the given lines, the result of a command.
+   *
+   * @param title describing the lines
+   * @param lines the result
+   */
+  abstract void show(String title, List<String> lines);
+
+  /**
+   * Run the given report and show its lines as they are given.
+   *
+   * @param title describing the lines
+   * @param name of the report, for its progress
+   * @param report giving the lines until it is cancelled
+   * @throws IOException if the report failed
+   */
+  abstract void stream(String title, String name, FindJob.Report report) throws IOException;
+
+  /**
+   * Run the given copy, then call pasted once it is over.
+   *
+   * @param job the copy to run
+   * @param directory where the copy is pasted
+   * @throws IOException if the copy failed
+   */
+  abstract void paste(CopyJob job, Directory directory) throws IOException;
+
+  /**
+   * Called once the current directory changed.
+   */
+  abstract void moved();
+
+  /**
+   * Show an error which does not stop the command.
+   *
+   * @param message the error
+   */
+  abstract void warn(String message);
+
+  /**
+   * Run a command which is not shared by the interface and the batch mode.
+   *
+   * @param result parsed command from CommandParser
+   * @throws Exception if the command failed
+   */
+  abstract void runOther(CommandParser result) throws Exception;
+
+  /**
+   * Run the given command after setting its NER, its duration being recorded.
+   *
+   * @param result parsed command from CommandParser
+   * @throws Exception if the command is invalid or failed
+   */
+  public void execute(CommandParser result) throws Exception {
+    final long start = System.nanoTime();
+    try {
+      if (!result.isValid()) {
+        throw new IllegalArgumentException(result.getError());
+      }
+      if (result.getNer() != -1) {
+        refreshListing();
+        if (!currentDirectory.checkNer(result.getNer())) {
+          throw new IllegalArgumentException("Invalid NER.");
+        }
+        currentNer = result.getNer();
+      }
+      run(result);
+    } catch (Exception exception) {
+      Metrics.global.add(Metrics.COMMANDS_FAILED, 1);
+      throw exception;
+    } finally {
+      Metrics.global.time("command " + result.getCommand().toString().toLowerCase(), start);
+    }
+  }
+
+  /**
+   * Call the methods of Directory according to the parsed command.
+   * The directory is listed again only before a NER is used, if a command changed it.
+   *
+   * @param result parsed command from CommandParser
+   * @throws Exception if the command failed
+   */
+  private void run(CommandParser result) throws Exception {
+    switch (result.getCommand()) {
+      case ADDNOTE:
+        if (result.getName() == null) {
+          throw new IllegalArgumentException("No note given.");
+        }
+        refreshListing();
+        currentDirectory.addNote(currentNer, result.getName());
+        notesDatabase.set(currentDirectory.getFilepath(currentNer),
+            currentDirectory.getNote(currentNer));
+        break;
+
+      case REMOVENOTE:
+        refreshListing();
+        currentDirectory.removeNote(currentNer);
+        notesDatabase.set(currentDirectory.getFilepath(currentNer), "");
+        break;
+
+      case COPY:
+      case CUT:
+        refreshListing();
+        file2copy = currentDirectory.getFilepath(currentNer);
+        shouldCut = result.getCommand() == CommandParser.Commands.CUT;
+        break;
+
+      case PASTE:
+        if (result.getName() != null && !PASTE_VERIFY.equals(result.getName())) {
+          throw new IllegalArgumentException(
+              "Unknown paste option, use paste " + PASTE_VERIFY + ".");
+        } else if (file2copy == null) {
+          throw new IllegalArgumentException("Nothing to paste.");
+        }
+        // the copy takes the notes changed in the loaded directories under the source
+        directories.saveUnder(file2copy);
+        CopyJob job = new CopyJob(file2copy, currentDirectory.dirpath, shouldCut,
+            result.getName() != null);
+        if (shouldCut) {
+          shouldCut = false;
+          file2copy = null;
+        }
+        paste(job, currentDirectory);
+        break;
+
+      case MKDIR:
+        if (result.getName() == null) {
+          throw new IllegalArgumentException("No directory name given.");
+        }
+        currentDirectory.mkdir(result.getName());
+        index.update(currentDirectory.dirpath.resolve(result.getName()));
+        changed = true;
+        break;
+
+      case FIND:
+        if (result.getName() == null) {
+          throw new IllegalArgumentException("No filename to search.");
+        }
+        NameMatcher matcher = new NameMatcher(result.getMatchMode(), result.getName());
+        Directory directory = currentDirectory;
+        stream("File(s) matching " + matcher.describe() + ":", result.getName(),
+            (action, cancelled) -> matcher.search(
+                (found, stop) -> index.find(directory, matcher, found, stop),
+                path -> action.accept(path.toString()), cancelled));
+        break;
+
+      case SEARCH:
+        if (result.getName() == null) {
+          throw new IllegalArgumentException("No words to search in the notes.");
+        }
+        String query = result.getName();
+        try {
+          // the notes files are read if the database has to be built
+          directories.saveAll();
+        } catch (IOException exception) {
+          warn(exception.getMessage());
+        }
+        stream("File(s) whose notes contain '" + query + "':", query,
+            (action, cancelled) -> notesDatabase.search(query)
+                .forEach(path -> action.accept(path.toString())));
+        break;
+
+      case DU:
+        refreshListing();
+        // the file at the given NER, else the current directory
+        Path measured = result.getNer() != -1 ? currentDirectory.getFilepath(currentNer)
+            : currentDirectory.dirpath;
+        stream("Disk usage of " + measured + ":", "du",
+            (action, cancelled) -> diskUsage.describe(measured, DU_LINES).forEach(action));
+        break;
+
+      case DUPES:
+        Path searched = currentDirectory.dirpath;
+        stream("Files with the same content, by group:", "duplicates",
+            (action, cancelled) -> formatDuplicates(
+                duplicateFinder.find(searched, cancelled), action));
+        break;
+
+      case GOTO:
+        refreshListing();
+        moveTo(currentDirectory.goTo(currentNer, directories));
+        break;
+
+      case PARENT:
+        moveTo(currentDirectory.getParent(directories));
+        break;
+
+      case STATS:
+        show("Statistics of the session:", Metrics.global.report());
+        break;
+
+      default:
+        runOther(result);
+        break;
+    }
+  }
+
+  /**
+   * Give a line for each file of the given groups of duplicates.
+   *
+   * @param groups the files with the same content
+   * @param action receiving the lines, the number of the group followed by the size and the path
+   */
+  static void formatDuplicates(List<DuplicateFinder.Group> groups, Consumer<String> action) {
+    for (int i = 0; i < groups.size(); i++) {
+      DuplicateFinder.Group group = groups.get(i);
+      for (Path path : group.paths) {
+        action.accept(String.format("#%d  %s  %s", i + 1, CopyJob.formatSize(group.size), path));
+      }
+    }
+  }
+
+  /**
+   * Change the current directory, the notes of the previous one being saved if they changed.
+   *
+   * @param directory the new current directory
+   */
+  private void moveTo(Directory directory) {
+    if (directory != currentDirectory) {
+      try {
+        directories.leave(currentDirectory);
+      } catch (IOException exception) {
+        warn(exception.getMessage()); // saved again on exit
+      }
+    }
+    currentDirectory = directory;
+    currentNer = -1;
+    changed = false;
+    moved();
+  }
+
+  /**
+   * Update the index, the notes, the loaded directories and the listing once a copy is over.
+   *
+   * @param job the copy which is over
+   * @param directory where the copy was pasted
+   */
+  void pasted(CopyJob job, Directory directory) {
+    if (job.destination != null) {
+      index.update(job.destination);
+    }
+    if (job.state == CopyJob.State.DONE) {
+      notesDatabase.paste(job.source, job.destination, job.cut);
+    }
+    if (job.cut && job.state == CopyJob.State.DONE) {
+      index.remove(job.source);
+      directories.removeUnder(job.source);
+    }
+    directory.listing.invalidate();
+    changed = true;
+  }
+
+  /**
+   * List the directory again if a command changed it since the last time.
+   */
+  void refreshListing() {
+    if (changed) {
+      currentDirectory.refresh();
+      changed = false;
+    }
+  }
+
+  /**
+   * Save the notes, the index, the notes database and the metrics if asked.
+   *
+   * @throws IOException if one of them could not be saved
+   */
+  void save() throws IOException {
+    directories.saveAll();
+    index.save();
+    notesDatabase.save();
+    if (statsFile != null) {
+      Metrics.global.writeTo(statsFile);
+    }
+  }
+
+  /**
+   * Wait for the notes being written and stop the threads of the engine.
+   */
+  void shutdown() {
+    Notes.awaitCompactions();
+    diskUsage.shutdown();
+    duplicateFinder.shutdown();
+  }
+}
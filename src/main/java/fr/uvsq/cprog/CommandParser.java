@@ -1,5 +1,9 @@
 package fr.uvsq.cprog;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Class to decompose, process and check the given command line.
  */
@@ -12,8 +16,13 @@ public class CommandParser {
     COPY,
     PASTE,
     VISU,
+    LINE,
+    HEX,
     MKDIR,
     FIND,
+    SEARCH,
+    DU,
+    DUPES,
     ADDNOTE,
     REMOVENOTE,
     GOTO,
@@ -21,12 +30,26 @@ public class CommandParser {
     EXIT,
     SETNER,
     HELP,
+    STATS,
+    JOBS,
+    PAUSE,
+    RESUME,
+    CANCEL,
     NOTHING
   }
 
+  static final String ERROR_ONE = "Invalid command with one argument. See help.";
+  static final String ERROR_TWO = "Invalid command with two arguments. See help.";
+  static final String ERROR_THREE = "Invalid command with three arguments. See help.";
+
+  // Words of the commands, whatever their case, built once for every line parsed
+  private static final Map<String, Commands> COMMAND_WORDS = commandWords();
+
   private int ner = -1;
   private Commands command = Commands.NOTHING;
   private String name = null;
+  private NameMatcher.Mode matchMode = NameMatcher.Mode.EXACT;
+  private String error = null;
 
   /**
    * Parse the given command according to its size.
@@ -35,129 +58,205 @@ public class CommandParser {
    * @throws IllegalArgumentException if the command is invalid
    */ 
   public CommandParser(String commandLine) throws IllegalArgumentException {
-    commandLine = commandLine.trim();
-    if (commandLine.isEmpty()) {
-      command = Commands.NOTHING;
-      return;
+    parseLine(commandLine);
+    if (error != null) {
+      throw new IllegalArgumentException(error);
     }
+  }
 
-    String[] arrOfCommand = commandLine.split("[ ]+", 3);
-
-    switch (arrOfCommand.length) {
-      case 1:
-        processSize1(arrOfCommand);
-        break;
-      case 2:
-        processSize2(arrOfCommand);
-        break;
-      default:
-        processSize3(arrOfCommand, commandLine);
-        break;
-    }
-  } 
+  /**
+   * Creates an empty result, filled by parseLine.
+   */
+  private CommandParser() {
+  }
 
+  /**
+   * Parse the given command, an invalid command being reported by the result
+   * instead of an exception.
+   *
+   * @param commandLine the command to parse
+   * @return the parsed command, with its error if it is invalid
+   */
+  public static CommandParser parse(String commandLine) {
+    CommandParser result = new CommandParser();
+    result.parseLine(commandLine);
+    return result;
+  }
 
   /**
-   * Checks if the given word is a NER or a command.
+   * Build the table of the words of the commands.
    *
-   * @param arrOfCommand array of String, representing the components of the command
-   * @throws IllegalArgumentException if the command is invalid. 
+   * @return an unmodifiable map from the words, case insensitive, to the commands
    */
-  private void processSize1(String[] arrOfCommand) throws IllegalArgumentException {
-    if (checkNer(arrOfCommand[0])) {
-      command = Commands.SETNER;
-    } else if (!checkCommand(arrOfCommand[0])) {
-      throw new IllegalArgumentException("Invalid command with one argument. See help.");
+  private static Map<String, Commands> commandWords() {
+    TreeMap<String, Commands> words = new TreeMap<String, Commands>(String.CASE_INSENSITIVE_ORDER);
+    for (Commands enumCommand : Commands.values()) {
+      if (enumCommand != Commands.SETNER && enumCommand != Commands.NOTHING) {
+        words.put(enumCommand.toString(), enumCommand);
+      }
     }
-  } 
-
+    words.put("+", Commands.ADDNOTE);
+    words.put("-", Commands.REMOVENOTE);
+    words.put("..", Commands.PARENT);
+    words.put(".", Commands.GOTO);
+    return Collections.unmodifiableMap(words);
+  }
 
   /**
-   * Checks the validity and the order of the two arguments.
+   * Split the line into at most three words separated by spaces, the last one keeping
+   * the rest of the line, and check their validity and their order.
    *
-   * @param arrOfCommand array of String, representing the components of the command
-   * @throws IllegalArgumentException if the command is invalid. 
+   * @param commandLine the command to parse
    */
-  private void processSize2(String[] arrOfCommand) throws IllegalArgumentException {
-    if (checkNer(arrOfCommand[0])) {
-      if (!checkCommand(arrOfCommand[1])) {
-        throw new IllegalArgumentException("Invalid command with two arguments. See help.");
-      }  
-    } else if (checkCommand(arrOfCommand[0])) {
-      name = arrOfCommand[1];
+  private void parseLine(String commandLine) {
+    int start = 0;
+    int end = commandLine.length();
+    while (start < end && commandLine.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && commandLine.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      command = Commands.NOTHING;
+      return;
+    }
+
+    int firstEnd = wordEnd(commandLine, start, end);
+    int second = skipSpaces(commandLine, firstEnd, end);
+    int number = parseNer(commandLine, start, firstEnd);
+
+    if (second == end) {
+      // a single word: a NER or a command
+      if (number >= 0) {
+        ner = number;
+        command = Commands.SETNER;
+      } else if (!checkCommand(commandLine.substring(start, firstEnd))) {
+        error = ERROR_ONE;
+      }
+    } else if (number >= 0) {
+      // a NER followed by a command and maybe a name
+      int secondEnd = wordEnd(commandLine, second, end);
+      int third = skipSpaces(commandLine, secondEnd, end);
+      if (!checkCommand(commandLine.substring(second, secondEnd))) {
+        error = third == end ? ERROR_TWO : ERROR_THREE;
+        return;
+      }
+      ner = number;
+      if (third < end) {
+        name = commandLine.substring(third, end);
+      }
+    } else if (checkCommand(commandLine.substring(start, firstEnd))) {
+      // a command followed by a name
+      name = commandLine.substring(second, end);
     } else {
-      throw new IllegalArgumentException("Invalid command with two arguments. See help.");
+      error = ERROR_TWO;
     }
-  }
 
+    if (command == Commands.FIND && name != null) {
+      processMatchMode();
+    }
+  }
 
   /**
-   * Checks the validity and the order of the given command.
+   * Gives the end of the word starting at the given index.
    *
-   * @param arrOfCommand array of String, representing the components of the command
-   * @throws IllegalArgumentException if the command is invalid. 
+   * @param line the command line
+   * @param index start of the word
+   * @param end end of the line
+   * @return index of the space after the word or end
    */
-  private void processSize3(String[] arrOfCommand, String commandLine)
-      throws IllegalArgumentException {
-    if (!checkNer(arrOfCommand[0])) {
-      arrOfCommand = commandLine.split("[ ]+", 2);
-      processSize2(arrOfCommand);
-    } else if (!checkCommand(arrOfCommand[1])) {
-      throw new IllegalArgumentException("Invalid command with three arguments. See help.");  
-    } else {
-      name = arrOfCommand[2];
+  private static int wordEnd(String line, int index, int end) {
+    while (index < end && line.charAt(index) != ' ') {
+      index++;
     }
+    return index;
   }
 
-
   /**
-   * Verify if the given string (inputCommand) is a valid command.  
+   * Gives the start of the next word.
    *
-   * @param inputCommand (string) to be checked
-   * @return true if the command is valid or false if not
+   * @param line the command line
+   * @param index where the spaces start
+   * @param end end of the line
+   * @return index of the first character which is not a space or end
    */
-  private boolean checkCommand(String inputCommand) {
-    // Check special characters
-    if (inputCommand.equals("+")) {
-      command = Commands.ADDNOTE;
-      return true;
-    } else if (inputCommand.equals("-")) {
-      command = Commands.REMOVENOTE;
-      return true;
-    } else if (inputCommand.equals("..")) {
-      command = Commands.PARENT;
-      return true;
-    } else if (inputCommand.equals(".")) {
-      command = Commands.GOTO;
-      return true;
+  private static int skipSpaces(String line, int index, int end) {
+    while (index < end && line.charAt(index) == ' ') {
+      index++;
     }
+    return index;
+  }
 
-    // Check with enum
-    inputCommand = inputCommand.toUpperCase();
-    for (Commands enumCommand : Commands.values()) {
-      if (enumCommand.toString().equals(inputCommand)) {
-        command = enumCommand;
-        return true;
+  /**
+   * Read the given word as a NER, an optional sign followed by digits.
+   *
+   * @param line the command line
+   * @param start start of the word
+   * @param end end of the word
+   * @return the NER or -1 if the word is not a positive int
+   */
+  private static int parseNer(String line, int start, int end) {
+    boolean negative = false;
+    if (line.charAt(start) == '+' || line.charAt(start) == '-') {
+      negative = line.charAt(start) == '-';
+      start++;
+    }
+    if (start == end) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      char digit = line.charAt(i);
+      if (digit < '0' || digit > '9') {
+        return -1;
+      }
+      value = value * 10 + (digit - '0');
+      if (value > Integer.MAX_VALUE) {
+        return -1;
       }
     }
+    return negative && value != 0 ? -1 : (int) value;
+  }
 
-    return false;
+  /**
+   * Extract the matching mode from the prefix of the name to find, if any.
+   */
+  private void processMatchMode() {
+    int colonIndex = name.indexOf(':');
+    if (colonIndex <= 0) {
+      return;
+    }
+    switch (name.substring(0, colonIndex)) {
+      case "glob":
+        matchMode = NameMatcher.Mode.GLOB;
+        break;
+      case "regex":
+        matchMode = NameMatcher.Mode.REGEX;
+        break;
+      case "fuzzy":
+        matchMode = NameMatcher.Mode.FUZZY;
+        break;
+      default:
+        return;
+    }
+    name = name.substring(colonIndex + 1);
   }
 
+
   /**
-   * Verify if the given string (inputNer) is an int.  
-   *
-   * @param inputNer (string) to be checked
+   * Verify if the given string (inputCommand) is a valid command.  
    *
-   * @return true if the NER is an int or false if not
+   * @param inputCommand (string) to be checked
+   * @return true if the command is valid or false if not
    */
-  private boolean checkNer(String inputNer) {
-    try {
-      ner = Integer.parseInt(inputNer);
-      return ner >= 0;
-    } catch (NumberFormatException e) {
+  private boolean checkCommand(String inputCommand) {
+    Commands found = COMMAND_WORDS.get(inputCommand);
+    if (found == null) {
       return false;
     }
+    command = found;
+    return true;
   }
 
   /**
@@ -178,6 +277,33 @@ public class CommandParser {
     return command;
   }
 
+  /**
+   * Returns how the name of a FIND command should be matched.
+   *
+   * @return the matching mode, EXACT if no prefix was given
+   */
+  public NameMatcher.Mode getMatchMode() {
+    return matchMode;
+  }
+
+  /**
+   * Tell if the command line was valid.
+   *
+   * @return true if the command was recognized
+   */
+  public boolean isValid() {
+    return error == null;
+  }
+
+  /**
+   * Returns why the command line is invalid.
+   *
+   * @return the message for the user or null if the command is valid
+   */
+  public String getError() {
+    return error;
+  }
+
   /**
    * Returns the name part of the parsed command line. 
    *
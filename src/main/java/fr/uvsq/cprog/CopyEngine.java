@@ -0,0 +1,99 @@
+package fr.uvsq.cprog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class to run the copy jobs one after the other on a background thread.
+ */
+public class CopyEngine {
+  ExecutorService executor;
+  List<CopyJob> jobs = new ArrayList<CopyJob>();
+
+  /**
+   * Creates an engine with its worker thread.
+   */
+  public CopyEngine() {
+    executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "copy");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Queue the given job.
+   *
+   * @param job the copy to run
+   * @param onDone called from the worker thread once the job is over
+   */
+  public synchronized void submit(CopyJob job, Runnable onDone) {
+    jobs.removeIf(CopyJob::isFinished);
+    jobs.add(job);
+    executor.execute(() -> {
+      job.run();
+      onDone.run();
+    });
+  }
+
+  /**
+   * Gives the job being run or, if none, the next one to run.
+   *
+   * @return the current job or null if every job is over
+   */
+  public synchronized CopyJob current() {
+    for (CopyJob job : jobs) {
+      if (!job.isFinished()) {
+        return job;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gives the jobs which are queued, running or over since the last submission.
+   *
+   * @return a copy of the list of jobs
+   */
+  public synchronized List<CopyJob> getJobs() {
+    return new ArrayList<CopyJob>(jobs);
+  }
+
+  /**
+   * Tell if some jobs are queued or running.
+   *
+   * @return true if a job is not over
+   */
+  public boolean isActive() {
+    return current() != null;
+  }
+
+  /**
+   * Gives the progress of the current job and the number of queued ones.
+   *
+   * @return a description of the jobs for the user
+   */
+  public synchronized String status() {
+    CopyJob current = current();
+    if (current == null) {
+      return "";
+    }
+    long queued = jobs.stream().filter(job -> job.state == CopyJob.State.QUEUED).count();
+    if (current.state == CopyJob.State.QUEUED) {
+      queued--;
+    }
+    return current.status() + (queued > 0 ? " (+" + queued + " queued)" : "");
+  }
+
+  /**
+   * Cancel every job and stop the worker thread.
+   */
+  public synchronized void shutdown() {
+    for (CopyJob job : jobs) {
+      job.cancel();
+    }
+    executor.shutdown();
+  }
+}
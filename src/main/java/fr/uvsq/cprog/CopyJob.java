@@ -0,0 +1,334 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Class to copy (or move) a file or a directory in the background,
+ * keeping track of its progress and allowing to pause or cancel it.
+ */
+public class CopyJob implements Runnable {
+  /**
+   * Enum of the states of a job.
+   */
+  enum State {
+    QUEUED,
+    RUNNING,
+    PAUSED,
+    DONE,
+    CANCELLED,
+    FAILED
+  }
+
+  static TreeCopier treeCopier = new TreeCopier();
+
+  Path source;
+  Path targetDirectory;
+  Path destination = null;
+  boolean cut;
+  boolean verify; // true if each copied file is checked against its source
+  volatile State state = State.QUEUED;
+  volatile boolean cancelled = false;
+  boolean paused = false;
+  String error = null;
+
+  AtomicLong bytesDone = new AtomicLong();
+  AtomicLong filesDone = new AtomicLong();
+  long totalBytes = 0;
+  long totalFiles = 0;
+  long startTime = 0;
+
+  /**
+   * Creates a job copying the given file into the given directory.
+   *
+   * @param source path of the file or directory to copy
+   * @param targetDirectory directory where to paste the copy
+   * @param cut true if the source should be deleted once copied
+   */
+  public CopyJob(Path source, Path targetDirectory, boolean cut) {
+    this(source, targetDirectory, cut, false);
+  }
+
+  /**
+   * Creates a job copying the given file into the given directory, checking each copy
+   * with a checksum of the source computed while it is copied if asked.
+   * A cut source is deleted only once all its files were checked.
+   *
+   * @param source path of the file or directory to copy
+   * @param targetDirectory directory where to paste the copy
+   * @param cut true if the source should be deleted once copied
+   * @param verify true if the copies should be checked
+   */
+  public CopyJob(Path source, Path targetDirectory, boolean cut, boolean verify) {
+    this.source = source;
+    this.targetDirectory = targetDirectory;
+    this.cut = cut;
+    this.verify = verify;
+  }
+
+  /**
+   * Run the job, any error being kept in the job.
+   */
+  @Override
+  public void run() {
+    try {
+      copy();
+    } catch (IOException exception) {
+      error = exception.getMessage();
+      state = State.FAILED;
+    }
+  }
+
+  /**
+   * Copy the source, then delete it if the job is a cut.
+   * A cancelled or failed copy is removed from the destination.
+   *
+   * @throws IOException if the copy failed
+   */
+  public void copy() throws IOException {
+    if (cancelled) {
+      state = State.CANCELLED;
+      return;
+    }
+    state = State.RUNNING;
+    startTime = System.nanoTime();
+    destination = Directory.pasteDestination(targetDirectory, source);
+
+    // on the same file system, a cut is a single rename
+    if (cut && FileCopier.tryMove(source, destination)) {
+      state = State.DONE;
+      return;
+    }
+
+    measure();
+
+    try {
+      if (Files.isDirectory(source)) {
+        copyDirectory();
+      } else {
+        copyFile(source, destination);
+      }
+    } catch (IOException exception) {
+      throw removePartialCopy(exception);
+    }
+
+    if (cancelled) {
+      Directory.removeFile(destination);
+      state = State.CANCELLED;
+      return;
+    }
+    if (cut) {
+      Directory.removeFile(source);
+    }
+    state = State.DONE;
+  }
+
+  /**
+   * Remove what was copied before the copy failed.
+   *
+   * @param exception the error of the copy
+   * @return the error to report, telling where the copy is if it could not be removed
+   */
+  private IOException removePartialCopy(IOException exception) {
+    try {
+      if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+        Directory.removeFile(destination);
+      }
+      return exception;
+    } catch (IOException ioexception) {
+      return new IOException(exception.getMessage() + " (partial copy left in "
+          + destination + ")");
+    }
+  }
+
+  /**
+   * Count the files and the bytes to copy, the unreadable ones being skipped.
+   *
+   * @throws IOException if the source could not be read
+   */
+  private void measure() throws IOException {
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        totalFiles++;
+        totalBytes += attributes.size();
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exception)
+          throws IOException {
+        if (file.equals(source)) {
+          throw exception;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exception) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Copy the source directory recursively to the destination, several files at a time.
+   *
+   * @throws IOException if the tree could not be read or some files could not be copied
+   */
+  private void copyDirectory() throws IOException {
+    List<String> errors = treeCopier.copy(source, destination, this::copyFile, () -> cancelled);
+    if (!errors.isEmpty()) {
+      throw new IOException(errors.size() + " file(s) could not be copied : "
+          + String.join(", ", errors));
+    }
+  }
+
+  /**
+   * Set the number of files copied at the same time in a directory.
+   *
+   * @param parallelism number of threads copying the files
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public static void setParallelism(int parallelism) throws IllegalArgumentException {
+    TreeCopier oldCopier = treeCopier;
+    treeCopier = new TreeCopier(parallelism);
+    oldCopier.shutdown();
+  }
+
+  /**
+   * Copy one file chunk by chunk, pausing or stopping between two chunks if asked.
+   *
+   * @param from the file to copy
+   * @param to the path of the copy, which must not exist
+   * @throws IOException if the file could not be copied or if its copy does not match
+   */
+  void copyFile(Path from, Path to) throws IOException {
+    LongPredicate listener = bytes -> {
+      bytesDone.addAndGet(bytes);
+      Metrics.global.add(Metrics.BYTES_COPIED, bytes);
+      return waitIfPaused();
+    };
+    boolean copied = verify ? FileCopier.copyVerified(from, to, listener)
+        : FileCopier.copyFile(from, to, listener);
+    if (copied) {
+      filesDone.incrementAndGet();
+    }
+  }
+
+  /**
+   * Block while the job is paused.
+   *
+   * @return false if the job was cancelled
+   */
+  private synchronized boolean waitIfPaused() {
+    while (paused && !cancelled) {
+      try {
+        wait();
+      } catch (InterruptedException exception) {
+        cancelled = true;
+      }
+    }
+    return !cancelled;
+  }
+
+  /**
+   * Pause the job after the chunk being copied.
+   */
+  public synchronized void pause() {
+    if (state == State.RUNNING) {
+      paused = true;
+      state = State.PAUSED;
+    }
+  }
+
+  /**
+   * Resume a paused job.
+   */
+  public synchronized void resume() {
+    if (state == State.PAUSED) {
+      paused = false;
+      state = State.RUNNING;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Cancel the job, the partial copy being deleted.
+   */
+  public synchronized void cancel() {
+    cancelled = true;
+    notifyAll();
+  }
+
+  /**
+   * Tell if the job is over, whatever its outcome.
+   *
+   * @return true if the job is done, cancelled or failed
+   */
+  public boolean isFinished() {
+    return state == State.DONE || state == State.CANCELLED || state == State.FAILED;
+  }
+
+  /**
+   * Gives the progress of the job for the user.
+   *
+   * @return the files and bytes copied, the throughput and the remaining time
+   */
+  public String status() {
+    String name = source.getFileName().toString();
+    String action = cut ? "Moving " : "Copying ";
+    switch (state) {
+      case QUEUED:
+        return action + name + ": queued";
+      case DONE:
+        return action + name + (verify ? ": done, verified" : ": done");
+      case CANCELLED:
+        return action + name + ": cancelled";
+      case FAILED:
+        return action + name + ": failed (" + error + ")";
+      default:
+        break;
+    }
+
+    long bytes = bytesDone.get();
+    double seconds = Math.max(1e-3, (System.nanoTime() - startTime) / 1e9);
+    long throughput = (long) (bytes / seconds);
+    String status = action + name + ": "
+        + filesDone.get() + "/" + totalFiles + " files, "
+        + formatSize(bytes) + "/" + formatSize(totalBytes) + ", "
+        + formatSize(throughput) + "/s";
+    if (throughput > 0) {
+      status += ", ETA " + ((totalBytes - bytes) / throughput) + "s";
+    }
+    if (state == State.PAUSED) {
+      status += " (paused)";
+    }
+    return status;
+  }
+
+  /**
+   * Gives a readable size.
+   *
+   * @param bytes the size in bytes
+   * @return the size with its unit
+   */
+  static String formatSize(long bytes) {
+    String[] units = {"B", "KB", "MB", "GB", "TB"};
+    double size = bytes;
+    int unit = 0;
+    while (size >= 1024 && unit < units.length - 1) {
+      size /= 1024;
+      unit++;
+    }
+    return unit == 0 ? bytes + " B" : String.format("%.1f %s", size, units[unit]);
+  }
+}
@@ -7,7 +7,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.commons.io.FileUtils;
 
@@ -15,8 +21,11 @@ import org.apache.commons.io.FileUtils;
  * Class to manage a directory and its notes.
  */
 public class Directory {
+  static volatile ParallelWalker walker = new ParallelWalker(); // replaced by setParallelism
+
   Path dirpath;
-  String[] files;
+  DirectoryListing listing;
+  List<String> files; // the names of the listing, null for a deleted file
   Notes notes;
 
   /**
@@ -30,7 +39,8 @@ public class Directory {
     if (!Files.isDirectory(dirpath)) {
       throw new IOException("No such directory: " + dirname);
     }
-    files = new File(dirname).list();
+    listing = new DirectoryListing(dirpath);
+    files = listing.names;
     notes = new Notes(dirname);
   } 
 
@@ -45,7 +55,8 @@ public class Directory {
     if (!Files.isDirectory(dirpath)) {
       throw new IOException("No such directory");
     }
-    files = new File(dirpath.toString()).list();
+    listing = new DirectoryListing(dirpath);
+    files = listing.names;
     notes = new Notes(dirpath.toString());
   } 
 
@@ -54,9 +65,25 @@ public class Directory {
    * Copy the file at the given source path in this Directory.
    *
    * @param source path of the directory to copy
+   * @return the path of the pasted copy
    * @throws IOException if could not copy
    */ 
-  public void paste(Path source) throws IOException  {
+  public Path paste(Path source) throws IOException  {
+    CopyJob job = new CopyJob(source, dirpath, false);
+    job.copy();
+    listing.invalidate();
+    return job.destination;
+  }
+
+  /**
+   * Gives the path where to paste the given source in the given directory,
+   * appending '-copy' to its name as long as needed.
+   *
+   * @param dirpath directory where to paste
+   * @param source path of the file to paste
+   * @return a path which does not exist yet
+   */
+  public static Path pasteDestination(Path dirpath, Path source) {
     //TODO throws InvalidPathException
     Path destination = dirpath.resolve(source.getFileName());
 
@@ -73,16 +100,7 @@ public class Directory {
       }
       destination = dirpath.resolve(newFilename);
     }
-
-    // copy the file
-    if (Files.isDirectory(source)) {
-      // if it is a directory, copy recursively
-      File dirSource = new File(source.toString());
-      File dirDestination = new File(destination.toString());
-      FileUtils.copyDirectory(dirSource, dirDestination);
-    } else {
-      Files.copy(source, destination);
-    }
+    return destination;
   }
 
 
@@ -101,6 +119,7 @@ public class Directory {
     }
     // create the directory
     new File(dir2create.toString()).mkdir();
+    listing.invalidate();
   }
 
 
@@ -112,13 +131,35 @@ public class Directory {
    * @throws IOException if could not access the starting directory
    */ 
   public Stream<Path> find(String filename) throws IOException {
-    return Files.find(dirpath, 128, (path, basicFileAttributes) -> {
-      if (path.getFileName().toString().equals(filename)) {
-        return true;
-      } else {
-        return false;
-      }
-    });
+    NameMatcher matcher = new NameMatcher(NameMatcher.Mode.EXACT, filename);
+    return walker.find(dirpath, (path, basicFileAttributes) -> matcher.matchesPath(path));
+  }
+
+  /**
+   * Search recursively for files whose name matches the given matcher and give them
+   * to the action as soon as they are found.
+   *
+   * @param matcher the compiled pattern of the names to find
+   * @param action to run on each matching path, from several threads
+   * @param cancelled telling if the search should stop
+   * @throws IOException if could not access the starting directory
+   */
+  public void find(NameMatcher matcher, Consumer<Path> action, BooleanSupplier cancelled)
+      throws IOException {
+    walker.walk(dirpath, (path, basicFileAttributes) -> matcher.matchesPath(path),
+        action, cancelled);
+  }
+
+  /**
+   * Set the number of directories listed at the same time by the recursive searches.
+   *
+   * @param parallelism number of threads walking the file tree
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public static void setParallelism(int parallelism) throws IllegalArgumentException {
+    ParallelWalker oldWalker = walker;
+    walker = new ParallelWalker(parallelism);
+    oldWalker.shutdown();
   }
 
 
@@ -161,7 +202,7 @@ public class Directory {
    * @return true if the ner is valid else return false
    */ 
   public boolean checkNer(int ner) {
-    return 0 <= ner && ner < files.length;
+    return 0 <= ner && ner < files.size() && files.get(ner) != null;
   }
 
   /**
@@ -174,13 +215,24 @@ public class Directory {
   public String getFilename(int ner) throws IllegalArgumentException {
     if (ner == -1) {
       throw new IllegalArgumentException("No current NER.");
-    } else if (0 <= ner && ner < files.length) {
-      return files[ner];
+    } else if (checkNer(ner)) {
+      return files.get(ner);
     } else {
       throw new IllegalArgumentException("Invalid NER.");
     }
   }
 
+  /**
+   * Gives the attributes of the file of the given NER, as read with the listing.
+   *
+   * @param ner of the file
+   * @return the attributes of the file or null if they could not be read
+   * @throws IllegalArgumentException if the given NER does not point to a file
+   */
+  public BasicFileAttributes getAttributes(int ner) throws IllegalArgumentException {
+    return listing.getAttributes(getFilename(ner));
+  }
+
   /**
    * Gives the Path of the file of the given NER.
    *
@@ -215,8 +267,21 @@ public class Directory {
    * @throws IOException if the ner's file is not a directory
    */ 
   public Directory goTo(int ner) throws IOException, IllegalArgumentException {
+    return goTo(ner, null);
+  }
+
+  /**
+   * Return the directory of the given NER, from the given cache if it was loaded before.
+   *
+   * @param ner of the file to go to
+   * @param cache of the loaded directories or null to load it again
+   * @return ner's directory
+   * @throws IOException if the ner's file is not a directory
+   */ 
+  public Directory goTo(int ner, DirectoryCache cache)
+      throws IOException, IllegalArgumentException {
     Path dir2go = dirpath.resolve(getFilename(ner));
-    return new Directory(dir2go);
+    return cache == null ? new Directory(dir2go) : cache.get(dir2go);
   }
   
   /**
@@ -226,28 +291,75 @@ public class Directory {
    * @throws IOException if the directory is the root
    */ 
   public Directory getParent() throws IOException {
+    return getParent(null);
+  }
+
+  /**
+   * Return the parent of the directory, from the given cache if it was loaded before.
+   *
+   * @param cache of the loaded directories or null to load it again
+   * @return the directory's parent
+   * @throws IOException if the directory is the root
+   */ 
+  public Directory getParent(DirectoryCache cache) throws IOException {
     Path dir2go = dirpath.getParent();
     if (dir2go == null) {
       throw new IOException("Already at the root.");
     } else {
-      return new Directory(dir2go);
+      return cache == null ? new Directory(dir2go) : cache.get(dir2go);
     }
   }
 
   /**
-   * Save the notes of the Directory.
+   * Save the notes of the Directory if they changed.
    *
+   * @return true if the file 'notes' was written or removed
    * @throws IOException if the notes could not be saved
    */ 
-  public void saveNotes() throws IOException {
-    notes.saveNotes(dirpath.toString());
+  public boolean saveNotes() throws IOException {
+    if (!notes.saveNotes(dirpath.toString())) {
+      return false;
+    }
+    listing.invalidate();
+    return true;
+  }
+
+  /**
+   * Apply the changes reported by a watcher to the listing, or list the directory again
+   * if some changes were lost.
+   *
+   * @param events the events reported on the directory
+   */
+  public void applyChanges(List<WatchEvent<?>> events) {
+    if (listing.apply(events)) {
+      files = listing.names;
+    } else {
+      refresh();
+    }
   }
 
   /**
-   * Refresh the Directory.
+   * Refresh the Directory, listing it again only if it changed.
    */
   public void refresh() {
-    files = new File(dirpath.toString()).list();
+    if (!listing.isStale()) {
+      return;
+    }
+    try {
+      listing = new DirectoryListing(dirpath);
+    } catch (IOException exception) {
+      listing.names = new ArrayList<String>();
+      listing.positions.clear();
+      listing.deleted = 0;
+    }
+    files = listing.names;
+  }
+
+  /**
+   * Give their new NER to the files following the deleted ones, if any.
+   */
+  public void compact() {
+    listing.compact();
   }
 }
 
@@ -0,0 +1,223 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Class to keep the last visited directories loaded, with their listing and their notes,
+ * so that going back to one of them does not read it again.
+ * The least recently used directories are evicted once there are too many of them
+ * or once they hold too many files, their notes being saved if they changed.
+ * The notes of a directory are also saved when it is left, as only the changes are appended,
+ * so that they are not lost if the program stops before exiting.
+ */
+public class DirectoryCache {
+  static final int DEFAULT_CAPACITY = 32;
+  static final long DEFAULT_MAX_WEIGHT = 100000; // files and notes kept in all the directories
+
+  int capacity;
+  long maxWeight;
+  Consumer<Directory> onSaved;
+  LinkedHashMap<Path, Directory> directories =
+      new LinkedHashMap<Path, Directory>(16, 0.75f, true); // in access order
+
+  /**
+   * Creates a cache with the default bounds.
+   *
+   * @param onSaved called with each directory whose notes were written back
+   */
+  public DirectoryCache(Consumer<Directory> onSaved) {
+    this(DEFAULT_CAPACITY, DEFAULT_MAX_WEIGHT, onSaved);
+  }
+
+  /**
+   * Creates a cache with the given bounds.
+   *
+   * @param capacity maximum number of directories
+   * @param maxWeight maximum number of files and notes in all the directories
+   * @param onSaved called with each directory whose notes were written back
+   * @throws IllegalArgumentException if the capacity is not positive
+   */
+  public DirectoryCache(int capacity, long maxWeight, Consumer<Directory> onSaved)
+      throws IllegalArgumentException {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity of the cache must be positive.");
+    }
+    this.capacity = capacity;
+    this.maxWeight = maxWeight;
+    this.onSaved = onSaved;
+  }
+
+  /**
+   * Gives the directory at the given path, from the cache if it was loaded before.
+   * A cached directory is listed again only if it changed since.
+   *
+   * @param dirpath path of the directory
+   * @return the loaded directory
+   * @throws IOException if the path is not a directory
+   */
+  public synchronized Directory get(Path dirpath) throws IOException {
+    Path key;
+    try {
+      key = dirpath.toRealPath();
+    } catch (IOException exception) {
+      throw new IOException("No such directory: " + dirpath);
+    }
+
+    Directory directory = directories.get(key);
+    if (directory != null) {
+      directory.refresh();
+      return directory;
+    }
+    directory = new Directory(dirpath);
+    directories.put(key, directory);
+    evict(directory);
+    return directory;
+  }
+
+  /**
+   * Evict the least recently used directories until the cache is within its bounds.
+   * A directory whose notes could not be saved is kept to be saved later.
+   *
+   * @param kept the directory which must stay in the cache
+   */
+  private void evict(Directory kept) {
+    long weight = 0;
+    for (Directory directory : directories.values()) {
+      weight += weight(directory);
+    }
+
+    Iterator<Directory> iterator = directories.values().iterator();
+    while ((directories.size() > capacity || weight > maxWeight) && iterator.hasNext()) {
+      Directory eldest = iterator.next();
+      if (eldest == kept) {
+        continue;
+      }
+      try {
+        save(eldest);
+      } catch (IOException exception) {
+        continue; // saved with the others on exit
+      }
+      weight -= weight(eldest);
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Gives the weight of the given directory in the cache.
+   *
+   * @param directory a cached directory
+   * @return the number of its files and notes
+   */
+  private static long weight(Directory directory) {
+    return directory.files.size() + directory.notes.notes.size();
+  }
+
+  /**
+   * Save the notes of the given directory if they changed.
+   *
+   * @param directory whose notes should be saved
+   * @throws IOException if the notes could not be saved
+   */
+  private void save(Directory directory) throws IOException {
+    if (directory.saveNotes()) {
+      onSaved.accept(directory);
+    }
+  }
+
+  /**
+   * Save the notes of the given directory if they changed, once it is not the current one,
+   * the directory staying in the cache.
+   *
+   * @param directory the directory which was left
+   * @throws IOException if the notes could not be saved
+   */
+  public synchronized void leave(Directory directory) throws IOException {
+    save(directory);
+  }
+
+  /**
+   * Save the notes which changed in the cached directories under the given path,
+   * before it is copied or moved.
+   *
+   * @param path of the file or directory to be copied
+   * @throws IOException with the error of the last directory which could not be saved
+   */
+  public synchronized void saveUnder(Path path) throws IOException {
+    Path real = realPath(path);
+    Path absolute = path.toAbsolutePath().normalize();
+    IOException error = null;
+    for (Map.Entry<Path, Directory> entry : directories.entrySet()) {
+      if (entry.getKey().startsWith(real) || isUnder(entry.getValue(), absolute)) {
+        try {
+          save(entry.getValue());
+        } catch (IOException exception) {
+          error = exception;
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Drop the cached directories under the given path once it was moved or removed,
+   * their notes being left as they are on the disk.
+   *
+   * @param path of the file or directory which does not exist anymore
+   */
+  public synchronized void removeUnder(Path path) {
+    Path absolute = path.toAbsolutePath().normalize();
+    directories.entrySet().removeIf(entry -> entry.getKey().startsWith(absolute)
+        || isUnder(entry.getValue(), absolute));
+  }
+
+  /**
+   * Tell if the given directory was loaded from a path under the given one.
+   *
+   * @param directory a cached directory
+   * @param absolute normalized absolute path
+   * @return true if the path of the directory starts with the given path
+   */
+  private static boolean isUnder(Directory directory, Path absolute) {
+    return directory.dirpath.normalize().startsWith(absolute);
+  }
+
+  /**
+   * Gives the real path of the given path if it exists.
+   *
+   * @param path of a file
+   * @return its real path, or the absolute path if it could not be resolved
+   */
+  private static Path realPath(Path path) {
+    try {
+      return path.toRealPath();
+    } catch (IOException exception) {
+      return path.toAbsolutePath().normalize();
+    }
+  }
+
+  /**
+   * Save the notes of every cached directory which changed.
+   *
+   * @throws IOException with the error of the last directory which could not be saved
+   */
+  public synchronized void saveAll() throws IOException {
+    IOException error = null;
+    for (Directory directory : directories.values()) {
+      try {
+        save(directory);
+      } catch (IOException exception) {
+        error = exception;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class to keep the names and the attributes of the files of a directory,
+ * read in a single pass and reused until the directory changes.
+ * The deleted files leave an empty slot in the names until the listing is compacted.
+ */
+public class DirectoryListing {
+  Path dirpath;
+  FileTime modified;
+  ArrayList<String> names; // the index is the NER, null for a deleted file
+  HashMap<String, Integer> positions; // index of each name
+  int deleted = 0; // number of empty slots
+  HashMap<String, BasicFileAttributes> attributes;
+  boolean invalidated = false;
+
+  /**
+   * Read the content of the given directory.
+   *
+   * @param dirpath path of the directory to list
+   * @throws IOException if the directory could not be listed
+   */
+  public DirectoryListing(Path dirpath) throws IOException {
+    final long start = System.nanoTime();
+    this.dirpath = dirpath;
+    // read the modification time first so that a change during the listing is seen later
+    modified = Files.getLastModifiedTime(dirpath);
+
+    names = new ArrayList<String>();
+    positions = new HashMap<String, Integer>();
+    attributes = new HashMap<String, BasicFileAttributes>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dirpath)) {
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        positions.put(name, names.size());
+        names.add(name);
+        attributes.put(name, readAttributes(entry));
+      }
+    } catch (DirectoryIteratorException exception) {
+      throw exception.getCause();
+    }
+    Metrics.global.time("directory listing", start);
+  }
+
+  /**
+   * Read the attributes of the given entry, or of the link itself if its target is missing.
+   *
+   * @param entry path of the file
+   * @return the attributes of the file or null if it does not exist anymore
+   */
+  static BasicFileAttributes readAttributes(Path entry) {
+    try {
+      return Files.readAttributes(entry, BasicFileAttributes.class);
+    } catch (IOException exception) {
+      try {
+        return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      } catch (IOException ioexception) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Apply the given events of the directory to the listing without listing it again,
+   * in a time proportional to the number of events.
+   * New files are added at the end and deleted files leave an empty slot,
+   * so that the NER of the other files do not change.
+   * The listing is compacted once half of its slots are empty.
+   *
+   * @param events the events reported by a WatchService on the directory
+   * @return false if an overflow was reported and the directory must be listed again
+   */
+  public boolean apply(List<WatchEvent<?>> events) {
+    for (WatchEvent<?> event : events) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        invalidate();
+        return false;
+      }
+      String name = event.context().toString();
+      if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+        Integer position = positions.remove(name);
+        if (position != null) {
+          names.set(position, null);
+          deleted++;
+        }
+        attributes.remove(name);
+      } else {
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+            && !positions.containsKey(name)) {
+          positions.put(name, names.size());
+          names.add(name);
+        }
+        attributes.put(name, readAttributes(dirpath.resolve(name)));
+      }
+    }
+    if (deleted * 2 > names.size()) {
+      compact();
+    }
+    try {
+      modified = Files.getLastModifiedTime(dirpath);
+    } catch (IOException exception) {
+      invalidate();
+    }
+    return true;
+  }
+
+  /**
+   * Remove the empty slots left by the deleted files, the following files changing of NER.
+   * The list of the names is changed in place.
+   */
+  public void compact() {
+    if (deleted == 0) {
+      return;
+    }
+    int size = 0;
+    for (String name : names) {
+      if (name != null) {
+        positions.put(name, size);
+        names.set(size++, name);
+      }
+    }
+    names.subList(size, names.size()).clear();
+    deleted = 0;
+  }
+
+  /**
+   * Mark the listing as outdated after a change made by the program itself.
+   */
+  public void invalidate() {
+    invalidated = true;
+  }
+
+  /**
+   * Check if the listing should be read again.
+   *
+   * @return true if it was invalidated or if the directory was modified since it was read
+   */
+  public boolean isStale() {
+    if (invalidated) {
+      return true;
+    }
+    try {
+      return !Files.getLastModifiedTime(dirpath).equals(modified);
+    } catch (IOException exception) {
+      return true;
+    }
+  }
+
+  /**
+   * Gives the attributes of the given file as they were when the directory was listed.
+   *
+   * @param name of the file
+   * @return the attributes or null if they are unknown
+   */
+  public BasicFileAttributes getAttributes(String name) {
+    return attributes.get(name);
+  }
+}
@@ -0,0 +1,102 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Class to watch the current directory and report its changes in batches.
+ */
+public class DirectoryWatcher implements Runnable {
+  static final long COALESCE_DELAY = 50; // milliseconds to wait for the end of a burst
+
+  WatchService service;
+  BiConsumer<Directory, List<WatchEvent<?>>> listener;
+  volatile Directory directory = null;
+  volatile WatchKey key = null;
+
+  /**
+   * Creates a watcher giving the changes of the watched directory to the listener.
+   * The listener is called from the thread of the watcher.
+   *
+   * @param listener receiving the watched directory and its events, OVERFLOW included
+   * @throws IOException if the file system cannot be watched
+   */
+  public DirectoryWatcher(BiConsumer<Directory, List<WatchEvent<?>>> listener)
+      throws IOException {
+    this.service = FileSystems.getDefault().newWatchService();
+    this.listener = listener;
+    Thread thread = new Thread(this, "watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Watch the given directory instead of the previous one.
+   *
+   * @param newDirectory the directory to watch
+   */
+  public synchronized void watch(Directory newDirectory) {
+    if (key != null) {
+      key.cancel();
+      key = null;
+    }
+    directory = newDirectory;
+    try {
+      key = newDirectory.dirpath.register(service,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    } catch (IOException | ClosedWatchServiceException exception) {
+      // the directory will only be refreshed by the user
+    }
+  }
+
+  /**
+   * Stop watching.
+   */
+  public void close() {
+    try {
+      service.close();
+    } catch (IOException exception) {
+      // nothing more to watch anyway
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        WatchKey taken = service.take();
+        // let the burst end, then take everything that happened meanwhile
+        Thread.sleep(COALESCE_DELAY);
+        List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>();
+        Directory watched;
+        synchronized (this) {
+          watched = directory;
+          while (taken != null) {
+            List<WatchEvent<?>> polled = taken.pollEvents();
+            if (taken == key) {
+              events.addAll(polled);
+            }
+            taken.reset();
+            taken = service.poll(0, TimeUnit.MILLISECONDS);
+          }
+        }
+        if (!events.isEmpty()) {
+          listener.accept(watched, events);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException exception) {
+      // the watcher is closed
+    }
+  }
+}
@@ -0,0 +1,366 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class to compute the size of file trees on a fork/join pool, one task per directory.
+ * What each directory holds is kept with its modification time, so that only the
+ * directories which changed since the last computation are listed again.
+ * A file whose size changes without being renamed does not change the modification time
+ * of its directory: it is seen once an entry of its directory is added or removed.
+ * Each directory keeps what its subdirectories held, so that a removed directory is
+ * forgotten with its whole tree, and the least recently measured trees are forgotten
+ * once too many directories are kept.
+ */
+public class DiskUsage {
+  static final int MAX_DEPTH = 128;
+  static final long MAX_NODES = 1000000; // directories kept in all the measured trees
+
+  ForkJoinPool pool;
+  long maxNodes = MAX_NODES;
+  LinkedHashMap<Path, Node> roots =
+      new LinkedHashMap<Path, Node>(16, 0.75f, true); // measured trees, in access order
+
+  /**
+   * Size of a file tree.
+   */
+  static class Usage {
+    final long bytes;
+    final long files;
+    final long directories;
+
+    /**
+     * Creates a size.
+     *
+     * @param bytes total size of the files
+     * @param files number of files
+     * @param directories number of directories, the root included
+     */
+    Usage(long bytes, long files, long directories) {
+      this.bytes = bytes;
+      this.files = files;
+      this.directories = directories;
+    }
+  }
+
+  /**
+   * What a directory held when it was last listed.
+   */
+  static class Node {
+    FileTime modified;
+    long bytes = 0; // size of its own files
+    long files = 0; // number of its own files
+    List<String> subdirectories = new ArrayList<String>();
+    Node[] children; // what the subdirectories held, from the last computation
+    Usage[] usages; // sizes of the subdirectories, from the last computation
+  }
+
+  /**
+   * Creates a computation using as many threads as there are processors.
+   */
+  public DiskUsage() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a computation with the given parallelism level.
+   *
+   * @param parallelism number of directories listed at the same time
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public DiskUsage(int parallelism) throws IllegalArgumentException {
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Compute the size of the given file or directory tree.
+   * The links are counted but not followed.
+   *
+   * @param path the file or the root of the tree
+   * @return its size
+   * @throws IOException if the path could not be read
+   */
+  public synchronized Usage measure(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+        LinkOption.NOFOLLOW_LINKS);
+    if (!attributes.isDirectory()) {
+      return new Usage(attributes.size(), 1, 0);
+    }
+    Path dirpath = path.toAbsolutePath().normalize();
+    Node cached = nodeAt(dirpath);
+    SizeTask task = new SizeTask(dirpath, 0, cached);
+    Usage usage = pool.invoke(task);
+    if (task.node != null && !replace(dirpath, task.node)) {
+      // a tree measured before under this one is kept in this one from now on
+      roots.keySet().removeIf(root -> root.startsWith(dirpath));
+      roots.put(dirpath, task.node);
+    }
+    evict(dirpath);
+    return usage;
+  }
+
+  /**
+   * Gives what the given directory held, from the trees measured before.
+   *
+   * @param dirpath absolute normalized path of the directory
+   * @return the node of the directory or null if it was not measured
+   */
+  synchronized Node nodeAt(Path dirpath) {
+    for (Map.Entry<Path, Node> root : roots.entrySet()) {
+      if (!dirpath.startsWith(root.getKey())) {
+        continue;
+      }
+      Node node = root.getValue();
+      if (dirpath.equals(root.getKey())) {
+        return node;
+      }
+      for (Path name : root.getKey().relativize(dirpath)) {
+        int i = node.subdirectories.indexOf(name.toString());
+        node = i >= 0 && node.children != null ? node.children[i] : null;
+        if (node == null) {
+          break;
+        }
+      }
+      if (node != null) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Put the given node in place of the node of the same directory in a measured tree.
+   *
+   * @param dirpath absolute normalized path of the directory
+   * @param node what the directory holds
+   * @return true if the directory is in a measured tree
+   */
+  private boolean replace(Path dirpath, Node node) {
+    Path parentpath = dirpath.getParent();
+    Node parent = parentpath != null ? nodeAt(parentpath) : null;
+    if (parent == null || parent.children == null) {
+      return false;
+    }
+    int i = parent.subdirectories.indexOf(dirpath.getFileName().toString());
+    if (i < 0) {
+      return false;
+    }
+    parent.children[i] = node;
+    return true;
+  }
+
+  /**
+   * Forget the least recently measured trees until the directories kept are within the bound.
+   *
+   * @param kept the tree just measured, forgotten only if it is too large by itself
+   */
+  private void evict(Path kept) {
+    long count = 0;
+    for (Node root : roots.values()) {
+      count += count(root);
+    }
+    Iterator<Map.Entry<Path, Node>> iterator = roots.entrySet().iterator();
+    while (count > maxNodes && iterator.hasNext()) {
+      Map.Entry<Path, Node> eldest = iterator.next();
+      if (!eldest.getKey().equals(kept)) {
+        count -= count(eldest.getValue());
+        iterator.remove();
+      }
+    }
+    if (count > maxNodes) {
+      roots.remove(kept);
+    }
+  }
+
+  /**
+   * Gives the number of directories kept in the given tree.
+   *
+   * @param node the root of the tree
+   * @return the number of its directories, as counted by the last computation
+   */
+  private static long count(Node node) {
+    long count = 1;
+    if (node.usages != null) {
+      for (Usage usage : node.usages) {
+        count += usage.directories;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Compute the size of the given tree and describe it with its largest subdirectories.
+   *
+   * @param path the file or the root of the tree
+   * @param count maximum number of subdirectories given
+   * @return the lines of the description
+   * @throws IOException if the path could not be read
+   */
+  public List<String> describe(Path path, int count) throws IOException {
+    Usage total = measure(path);
+    List<String> lines = new ArrayList<String>();
+    lines.add(CopyJob.formatSize(total.bytes) + " in " + total.files + " files and "
+        + total.directories + " directories");
+
+    Node node = nodeAt(path.toAbsolutePath().normalize());
+    if (node == null) {
+      return lines;
+    }
+    List<Integer> largest = new ArrayList<Integer>();
+    for (int i = 0; i < node.subdirectories.size(); i++) {
+      largest.add(i);
+    }
+    largest.sort((first, second) ->
+        Long.compare(node.usages[second].bytes, node.usages[first].bytes));
+    for (int i : largest.subList(0, Math.min(count, largest.size()))) {
+      lines.add(String.format("%10s  %s/", CopyJob.formatSize(node.usages[i].bytes),
+          node.subdirectories.get(i)));
+    }
+    if (node.files > 0) {
+      lines.add(String.format("%10s  (%d files of this directory)",
+          CopyJob.formatSize(node.bytes), node.files));
+    }
+    return lines;
+  }
+
+  /**
+   * Forget what was kept of the directories.
+   */
+  public synchronized void clear() {
+    roots.clear();
+  }
+
+  /**
+   * Stop the threads once the running computations are done.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Task computing the size of one directory, forking a task for each of its subdirectories.
+   */
+  private class SizeTask extends RecursiveTask<Usage> {
+    private static final long serialVersionUID = 1L;
+
+    Path dirpath;
+    int depth;
+    Node cached; // what the directory held at the last computation, or null
+    Node node = null; // what the directory holds, once computed
+
+    /**
+     * Creates the task of the given directory.
+     *
+     * @param dirpath directory to measure
+     * @param depth of the directory from the start of the computation
+     * @param cached what the directory held at the last computation, or null
+     */
+    SizeTask(Path dirpath, int depth, Node cached) {
+      this.dirpath = dirpath;
+      this.depth = depth;
+      this.cached = cached;
+    }
+
+    @Override
+    protected Usage compute() {
+      node = nodeOf(dirpath, cached);
+      if (node == null) {
+        return new Usage(0, 0, 1);
+      }
+
+      List<SizeTask> subtasks = new ArrayList<SizeTask>();
+      if (depth + 1 < MAX_DEPTH) {
+        for (int i = 0; i < node.subdirectories.size(); i++) {
+          subtasks.add(new SizeTask(dirpath.resolve(node.subdirectories.get(i)), depth + 1,
+              node.children[i]));
+        }
+      }
+      invokeAll(subtasks);
+
+      long bytes = node.bytes;
+      long files = node.files;
+      long directories = 1;
+      Usage[] usages = new Usage[node.subdirectories.size()];
+      for (int i = 0; i < usages.length; i++) {
+        usages[i] = i < subtasks.size() ? subtasks.get(i).join() : new Usage(0, 0, 1);
+        node.children[i] = i < subtasks.size() ? subtasks.get(i).node : null;
+        bytes += usages[i].bytes;
+        files += usages[i].files;
+        directories += usages[i].directories;
+      }
+      node.usages = usages;
+      return new Usage(bytes, files, directories);
+    }
+
+    /**
+     * Gives what the directory holds, listing it only if it changed since the last time.
+     *
+     * @param path the directory
+     * @param node what the directory held at the last computation, or null
+     * @return its content or null if it could not be read
+     */
+    private Node nodeOf(Path path, Node node) {
+      FileTime modified;
+      try {
+        modified = Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS);
+      } catch (IOException exception) {
+        return null;
+      }
+      if (node != null && node.modified.equals(modified)) {
+        return node;
+      }
+
+      // read the modification time first so that a change during the listing is seen later
+      Node listed = new Node();
+      listed.modified = modified;
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+        for (Path entry : entries) {
+          BasicFileAttributes attributes;
+          try {
+            attributes = Files.readAttributes(
+                entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          } catch (IOException exception) {
+            continue; // deleted since listed
+          }
+          if (attributes.isDirectory()) {
+            listed.subdirectories.add(entry.getFileName().toString());
+          } else {
+            listed.bytes += attributes.size();
+            listed.files++;
+          }
+        }
+      } catch (IOException | DirectoryIteratorException exception) {
+        // count what could be read
+      }
+      Metrics.global.add(Metrics.ENTRIES_WALKED, listed.files + listed.subdirectories.size());
+
+      // keep what the remaining subdirectories held, the removed ones being forgotten
+      listed.children = new Node[listed.subdirectories.size()];
+      if (node != null) {
+        Map<String, Node> children = new HashMap<String, Node>();
+        for (int i = 0; i < node.subdirectories.size(); i++) {
+          children.put(node.subdirectories.get(i), node.children[i]);
+        }
+        for (int i = 0; i < listed.children.length; i++) {
+          listed.children[i] = children.get(listed.subdirectories.get(i));
+        }
+      }
+      return listed;
+    }
+  }
+}
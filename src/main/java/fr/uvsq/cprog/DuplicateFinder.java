@@ -0,0 +1,297 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class to find the files with the same content under a directory, in three stages:
+ * the files are grouped by size, then by a hash of their first and last blocks,
+ * and only the files still alike are read whole on a fixed pool of threads.
+ */
+public class DuplicateFinder {
+  static final int BLOCK_SIZE = 4096; // bytes hashed at each end of a file by the second stage
+  static final int CHUNK_SIZE = 1024 * 1024; // bytes read at once by the last stage
+
+  /**
+   * Files with the same content.
+   */
+  static class Group {
+    final long size;
+    final List<Path> paths;
+
+    /**
+     * Creates a group.
+     *
+     * @param size of each file
+     * @param paths of the files, sorted
+     */
+    Group(long size, List<Path> paths) {
+      this.size = size;
+      this.paths = paths;
+    }
+
+    /**
+     * Gives the space which would be freed by keeping a single file.
+     *
+     * @return the size of the other files
+     */
+    long wasted() {
+      return size * (paths.size() - 1);
+    }
+  }
+
+  /**
+   * A file found by the walk.
+   */
+  private static class Candidate {
+    final Path path;
+    final long size;
+
+    /**
+     * Creates a candidate.
+     *
+     * @param path of the file
+     * @param size of the file
+     */
+    Candidate(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Interface of the functions hashing a file.
+   */
+  private interface Hash {
+    /**
+     * Hash a file.
+     *
+     * @param candidate the file
+     * @return the digest
+     * @throws IOException if the file could not be read
+     */
+    byte[] digest(Candidate candidate) throws IOException;
+  }
+
+  ExecutorService pool;
+  ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(
+      () -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
+  /**
+   * Creates a finder using as many threads as there are processors.
+   */
+  public DuplicateFinder() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a finder with the given number of threads.
+   *
+   * @param parallelism number of files read at the same time
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public DuplicateFinder(int parallelism) throws IllegalArgumentException {
+    pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "dupes");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Find the groups of files with the same content under the given directory.
+   * Empty files and the hard links to a file already found are ignored.
+   *
+   * @param start the directory to search
+   * @param cancelled telling if the search should stop
+   * @return the groups, those wasting the most space first
+   * @throws IOException if the directory could not be read
+   */
+  public List<Group> find(Path start, BooleanSupplier cancelled) throws IOException {
+    // list the files, grouped by size
+    ConcurrentLinkedQueue<Candidate> found = new ConcurrentLinkedQueue<Candidate>();
+    Set<Object> fileKeys = ConcurrentHashMap.newKeySet();
+    Directory.walker.walk(start, (path, attributes) -> {
+      if (attributes.isRegularFile() && attributes.size() > 0
+          && (attributes.fileKey() == null || fileKeys.add(attributes.fileKey()))) {
+        found.add(new Candidate(path, attributes.size()));
+      }
+      return false;
+    }, path -> { }, cancelled);
+    Map<Object, List<Candidate>> groups = new HashMap<Object, List<Candidate>>();
+    for (Candidate candidate : found) {
+      groups.computeIfAbsent(candidate.size, size -> new ArrayList<Candidate>()).add(candidate);
+    }
+
+    // then by the hash of their ends, the small files being hashed whole
+    groups = regroup(groups.values(), this::hashEnds, cancelled);
+
+    // then by the hash of their whole content
+    List<List<Candidate>> small = new ArrayList<List<Candidate>>();
+    List<List<Candidate>> large = new ArrayList<List<Candidate>>();
+    for (List<Candidate> group : groups.values()) {
+      (group.get(0).size <= 2 * BLOCK_SIZE ? small : large).add(group);
+    }
+    small.addAll(regroup(large, this::hashAll, cancelled).values());
+
+    List<Group> duplicates = new ArrayList<Group>();
+    for (List<Candidate> group : small) {
+      List<Path> paths = new ArrayList<Path>();
+      group.forEach(candidate -> paths.add(candidate.path));
+      paths.sort(null);
+      duplicates.add(new Group(group.get(0).size, paths));
+    }
+    duplicates.sort((first, second) -> Long.compare(second.wasted(), first.wasted()));
+    return duplicates;
+  }
+
+  /**
+   * Hash the files of the given groups on the pool and split each group by digest.
+   * The files which could not be read are dropped.
+   *
+   * @param groups files which may be alike
+   * @param hash the function hashing a file
+   * @param cancelled telling if the search should stop
+   * @return the groups of at least two files with the same size and digest
+   * @throws IOException if the search was interrupted
+   */
+  private Map<Object, List<Candidate>> regroup(Collection<List<Candidate>> groups, Hash hash,
+      BooleanSupplier cancelled) throws IOException {
+    List<Candidate> candidates = new ArrayList<Candidate>();
+    List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+    for (List<Candidate> group : groups) {
+      if (group.size() < 2) {
+        continue;
+      }
+      for (Candidate candidate : group) {
+        candidates.add(candidate);
+        tasks.add(() -> cancelled.getAsBoolean() ? null : hash.digest(candidate));
+      }
+    }
+
+    Map<Object, List<Candidate>> regrouped = new HashMap<Object, List<Candidate>>();
+    try {
+      List<Future<byte[]>> digests = pool.invokeAll(tasks);
+      for (int i = 0; i < digests.size(); i++) {
+        byte[] digest;
+        try {
+          digest = digests.get(i).get();
+        } catch (ExecutionException exception) {
+          continue; // could not be read
+        }
+        if (digest != null) {
+          Candidate candidate = candidates.get(i);
+          regrouped.computeIfAbsent(List.of(candidate.size, ByteBuffer.wrap(digest)),
+              key -> new ArrayList<Candidate>()).add(candidate);
+        }
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Search interrupted");
+    }
+    regrouped.values().removeIf(group -> group.size() < 2);
+    return regrouped;
+  }
+
+  /**
+   * Hash the first and the last blocks of a file, or the whole file if it is small.
+   *
+   * @param candidate the file
+   * @return the digest
+   * @throws IOException if the file could not be read
+   */
+  private byte[] hashEnds(Candidate candidate) throws IOException {
+    MessageDigest digest = newDigest();
+    try (FileChannel channel = FileChannel.open(candidate.path, StandardOpenOption.READ)) {
+      if (candidate.size <= 2 * BLOCK_SIZE) {
+        update(digest, channel, 0, candidate.size);
+      } else {
+        update(digest, channel, 0, BLOCK_SIZE);
+        update(digest, channel, candidate.size - BLOCK_SIZE, BLOCK_SIZE);
+      }
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Hash the whole content of a file, a chunk at a time.
+   *
+   * @param candidate the file
+   * @return the digest
+   * @throws IOException if the file could not be read
+   */
+  private byte[] hashAll(Candidate candidate) throws IOException {
+    MessageDigest digest = newDigest();
+    try (FileChannel channel = FileChannel.open(candidate.path, StandardOpenOption.READ)) {
+      update(digest, channel, 0, candidate.size);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Add the given part of a file to a digest, through the buffer of the thread.
+   *
+   * @param digest the digest to update
+   * @param channel the file
+   * @param position of the first byte
+   * @param length number of bytes, fewer being read if the file was truncated
+   * @throws IOException if the file could not be read
+   */
+  private void update(MessageDigest digest, FileChannel channel, long position, long length)
+      throws IOException {
+    ByteBuffer buffer = buffers.get();
+    long start = position;
+    long end = position + length;
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        break;
+      }
+      buffer.flip();
+      digest.update(buffer);
+      position += read;
+    }
+    Metrics.global.add(Metrics.BYTES_HASHED, position - start);
+  }
+
+  /**
+   * Creates the digest used to compare the files.
+   *
+   * @return a SHA-256 digest
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(exception); // every JVM has SHA-256
+    }
+  }
+
+  /**
+   * Stop the threads once the running searches are done.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+}
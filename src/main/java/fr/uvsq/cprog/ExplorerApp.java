@@ -1,6 +1,11 @@
 package fr.uvsq.cprog;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -8,27 +13,68 @@ import java.nio.file.Paths;
  * Process the arguments entered by the user and launch the program.
  */
 class ExplorerApp {
+  static final String USAGE = "\nUsage: java -jar explorer-1.0-jar-with-dependencies.jar"
+      + " [--batch <script|->] [--stats <file>] [--parallelism <n>] [<path>]";
+
   /**
    * Main method called when executing the jar.
    */
   public static void main(String[] args) throws IOException {
-    Session session;
-    if (args.length > 0) {
-      // try to start the program at the given path
+    String script = null;
+    Path statsFile = null;
+    int parallelism = 0; // the number of processors by default
+    String dirname = "";
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--batch") && i + 1 < args.length) {
+        script = args[++i];
+      } else if (args[i].equals("--stats") && i + 1 < args.length) {
+        statsFile = Paths.get(args[++i]).toAbsolutePath();
+      } else if (args[i].equals("--parallelism") && i + 1 < args.length
+          && args[i + 1].matches("[1-9][0-9]{0,3}")) {
+        parallelism = Integer.parseInt(args[++i]);
+      } else if (dirname.isEmpty() && !args[i].startsWith("--")) {
+        dirname = args[i];
+      } else {
+        System.out.println("Invalid argument: " + args[i]);
+        System.out.println(USAGE);
+        return;
+      }
+    }
+
+    // try to start the program at the given path, the working directory by default
+    if (!dirname.isEmpty()) {
       try {
-        String path = Paths.get(args[0]).toRealPath().toString();
-        session = new Session(path);
+        dirname = Paths.get(dirname).toRealPath().toString();
       } catch (IOException ioexception) {
         // show error and exit
-        System.out.println("Invalid argument: " + args[0] + " is not a directory.");
-        System.out.println("\nUsage: java -jar explorer-1.0-jar-with-dependencies.jar [<path>]");
+        System.out.println("Invalid argument: " + dirname + " is not a directory.");
+        System.out.println(USAGE);
         return;
       }
-    } else { // no argument given, starting at working directory
-      session = new Session("");
+    }
+
+    // number of directories listed at the same time by the searches
+    if (parallelism > 0) {
+      Directory.setParallelism(parallelism);
+    }
+
+    if (script != null) {
+      // run the commands without the interface, '-' reading them from the standard input
+      BatchRunner runner = new BatchRunner(dirname,
+          new PrintStream(System.out, false), System.err);
+      runner.statsFile = statsFile;
+      int errors;
+      try (BufferedReader input = script.equals("-")
+          ? new BufferedReader(new InputStreamReader(System.in))
+          : Files.newBufferedReader(Paths.get(script))) {
+        errors = runner.run(input);
+      }
+      System.exit(errors > 0 ? 1 : 0);
     }
 
     // start the program
+    Session session = new Session(dirname);
+    session.statsFile = statsFile;
     session.start();
   }
 }
@@ -0,0 +1,145 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Class choosing how to copy or move files: a rename when possible,
+ * else a transfer between channels which lets the kernel copy the bytes.
+ */
+public class FileCopier {
+  static final long SMALL_FILE = 1024 * 1024; // copied in a single transfer
+  static final long CHUNK_SIZE = 8 * 1024 * 1024; // transferred at once for the large files
+  static final int BUFFER_SIZE = 1024 * 1024; // read at once by the verified copies
+
+  static ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(
+      () -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+  /**
+   * Try to move the source to the destination with a single rename.
+   *
+   * @param source the file or directory to move
+   * @param destination its new path, which must not exist
+   * @return true if moved, false if the destination is on another file system
+   * @throws IOException if the move failed for another reason
+   */
+  public static boolean tryMove(Path source, Path destination) throws IOException {
+    Path parent = destination.toAbsolutePath().getParent();
+    if (!Files.getFileStore(source).equals(Files.getFileStore(parent))) {
+      return false;
+    }
+    try {
+      Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (AtomicMoveNotSupportedException exception) {
+      return false;
+    }
+  }
+
+  /**
+   * Copy one file with FileChannel.transferTo, chunk by chunk for the large files.
+   * The listener is called after each chunk and can stop the copy.
+   *
+   * @param from the file to copy
+   * @param to the path of the copy, which must not exist
+   * @param listener receiving the number of bytes of each chunk, returning false to stop
+   * @return true if the whole file was copied
+   * @throws IOException if the file could not be copied
+   */
+  public static boolean copyFile(Path from, Path to, LongPredicate listener)
+      throws IOException {
+    try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(to,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      long size = in.size();
+      long chunk = size <= SMALL_FILE ? SMALL_FILE : CHUNK_SIZE;
+      long position = 0;
+      while (position < size) {
+        long transferred = in.transferTo(position, Math.min(chunk, size - position), out);
+        if (transferred <= 0) {
+          break; // the file was truncated meanwhile
+        }
+        position += transferred;
+        if (!listener.test(transferred)) {
+          return false;
+        }
+      }
+    }
+    Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+    return true;
+  }
+
+  /**
+   * Copy one file through a buffer, computing the CRC32C of the bytes as they are copied,
+   * then check the copy against it. A copy which does not match is deleted.
+   * The listener is called after each buffer and can stop the copy.
+   *
+   * @param from the file to copy
+   * @param to the path of the copy, which must not exist
+   * @param listener receiving the number of bytes of each buffer, returning false to stop
+   * @return true if the whole file was copied and verified
+   * @throws IOException if the file could not be copied or if the copy does not match
+   */
+  public static boolean copyVerified(Path from, Path to, LongPredicate listener)
+      throws IOException {
+    ByteBuffer buffer = buffers.get();
+    CRC32C checksum = new CRC32C();
+    try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(to,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      buffer.clear();
+      while (in.read(buffer) > 0) {
+        buffer.flip();
+        checksum.update(buffer);
+        buffer.rewind();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+        buffer.clear();
+        if (!listener.test(length)) {
+          return false;
+        }
+      }
+      // the copy is read back while it is still in the page cache
+      if (checksum(to) != checksum.getValue()) {
+        throw new IOException("the copy of " + from.getFileName() + " does not match");
+      }
+    } catch (IOException exception) {
+      Files.deleteIfExists(to);
+      throw exception;
+    }
+    Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+    Metrics.global.add(Metrics.BYTES_VERIFIED, Files.size(to));
+    return true;
+  }
+
+  /**
+   * Compute the CRC32C of a file, through the buffer of the thread.
+   *
+   * @param path the file
+   * @return the checksum of its content
+   * @throws IOException if the file could not be read
+   */
+  static long checksum(Path path) throws IOException {
+    ByteBuffer buffer = buffers.get();
+    CRC32C checksum = new CRC32C();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer.clear();
+      while (channel.read(buffer) > 0) {
+        buffer.flip();
+        checksum.update(buffer);
+        buffer.clear();
+      }
+    }
+    return checksum.getValue();
+  }
+}
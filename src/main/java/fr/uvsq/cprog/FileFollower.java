@@ -0,0 +1,106 @@
+package fr.uvsq.cprog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to follow a file which is still being written, as 'tail -f' does.
+ * The offset of the last read byte is kept so that each poll only reads the new bytes.
+ */
+public class FileFollower implements Closeable {
+  static final int TAIL_BYTES = 16 * 1024; // bytes shown when the follow starts
+  static final int MAX_POLL_BYTES = 1024 * 1024; // bytes read at most by a poll
+  static final int MAX_LINE_LENGTH = FilePager.MAX_LINE_LENGTH;
+
+  Path path;
+  Path filename;
+  FileChannel channel;
+  long offset; // offset of the next byte to read
+  boolean skipLine; // true until the end of the line cut by the first read
+  ByteBuffer buffer = ByteBuffer.allocate(FilePager.BUFFER_SIZE);
+  ByteArrayOutputStream partial = new ByteArrayOutputStream(); // line without line feed yet
+
+  /**
+   * Open the given file, the next poll giving the lines of its last bytes.
+   *
+   * @param path of the file to follow
+   * @throws IOException if the file could not be opened
+   */
+  public FileFollower(Path path) throws IOException {
+    this.path = path;
+    this.filename = path.getFileName();
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    offset = Math.max(0, channel.size() - TAIL_BYTES);
+    skipLine = offset > 0;
+  }
+
+  /**
+   * Read the bytes written since the last poll.
+   * A file which became smaller was truncated and is read again from its start.
+   *
+   * @return the new complete lines
+   * @throws IOException if the file could not be read
+   */
+  public List<String> poll() throws IOException {
+    List<String> lines = new ArrayList<String>();
+    long size = channel.size();
+    if (size < offset) {
+      offset = 0;
+      skipLine = false;
+      partial.reset();
+    }
+
+    long end = Math.min(size, offset + MAX_POLL_BYTES); // the rest is read by the next poll
+    while (offset < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        byte current = buffer.get(i);
+        if (current == '\n') {
+          if (!skipLine) {
+            String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+            lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+          }
+          skipLine = false;
+          partial.reset();
+        } else if (!skipLine && partial.size() < MAX_LINE_LENGTH) {
+          partial.write(current);
+        }
+      }
+      offset += read;
+    }
+    return lines;
+  }
+
+  /**
+   * Tell if there are bytes left to read, a poll having stopped before the end of the file.
+   *
+   * @return true if the file is longer than what was read
+   * @throws IOException if the size of the file could not be read
+   */
+  public boolean hasMore() throws IOException {
+    return channel.size() > offset;
+  }
+
+  /**
+   * Close the file.
+   *
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
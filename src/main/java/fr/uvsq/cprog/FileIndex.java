@@ -0,0 +1,577 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Class to keep an on-disk index of the file names under the session root.
+ * The index maps each basename to the paths (relative to the root) carrying it,
+ * so that a search does not need to walk the whole tree.
+ * It is saved in the cache directory of the user, not in the browsed tree.
+ */
+public class FileIndex {
+  static final String INDEX_NAME = "index";
+  static final String CACHE_PROPERTY = "explorer.cache"; // system property for the cache directory
+  static final long MAX_AGE = 60 * 60 * 1000L; // rebuild the index after one hour
+  static final int MAX_PENDING = 1000; // changes kept to be replayed, past which it is rebuilt
+
+  Path root;
+  Path indexpath;
+  HashMap<String, List<String>> names = null; // null until loaded
+  TreeSet<String> sorted = null; // the same paths, sorted to find the ones of a subtree
+  List<Path> pending = new ArrayList<Path>(); // changed while not loaded or being rebuilt
+  int building = 0; // number of rebuilds running
+  int overflows = 0; // number of times the pending changes were dropped
+  long builtAt = 0;
+  boolean dirty = false;
+
+  /**
+   * Creates the index of the given root directory.
+   * Nothing is read or built before the first search.
+   *
+   * @param root directory from which every file is indexed
+   */
+  public FileIndex(Path root) {
+    this.root = root.toAbsolutePath();
+    this.indexpath = cacheFile(this.root, INDEX_NAME);
+  }
+
+  /**
+   * Gives the file where the data of the given root is saved, in the cache directory of the user:
+   * the explorer.cache property, else $XDG_CACHE_HOME/explorer, else ~/.cache/explorer.
+   *
+   * @param root directory whose data is saved
+   * @param name kind of the data
+   * @return the path of the file, named after the kind of data and the root
+   */
+  static Path cacheFile(Path root, String name) {
+    Path cache;
+    if (System.getProperty(CACHE_PROPERTY) != null) {
+      cache = Paths.get(System.getProperty(CACHE_PROPERTY));
+    } else if (System.getenv("XDG_CACHE_HOME") != null) {
+      cache = Paths.get(System.getenv("XDG_CACHE_HOME"), "explorer");
+    } else {
+      cache = Paths.get(System.getProperty("user.home"), ".cache", "explorer");
+    }
+    UUID key = UUID.nameUUIDFromBytes(root.toAbsolutePath().toString()
+        .getBytes(StandardCharsets.UTF_8));
+    return cache.resolve(name + "-" + key);
+  }
+
+  /**
+   * Search for the files matching the given name under the given directory.
+   * Falls back to a walk of the directory if it is outside of the indexed root.
+   *
+   * @param directory where to start the search
+   * @param filename name of the file to find
+   * @return a stream of path matching the name to find
+   * @throws IOException if the index could not be built
+   */
+  public Stream<Path> find(Directory directory, String filename) throws IOException {
+    ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<Path>();
+    find(directory, new NameMatcher(NameMatcher.Mode.EXACT, filename), found::add, () -> false);
+    return found.stream();
+  }
+
+  /**
+   * Search for the files whose name matches the given matcher under the given directory
+   * and give them to the action.
+   * If the index has to be built, the action is called from several threads during the walk.
+   *
+   * @param directory where to start the search
+   * @param matcher the compiled pattern of the names to find
+   * @param action to run on each matching path
+   * @param cancelled telling if the walk building the index or outside of the root should stop
+   * @throws IOException if the index could not be built
+   */
+  public void find(Directory directory, NameMatcher matcher, Consumer<Path> action,
+      BooleanSupplier cancelled) throws IOException {
+    if (!directory.dirpath.startsWith(root)) {
+      directory.find(matcher, action, cancelled);
+    } else {
+      lookupOrBuild(directory.dirpath, matcher, action, cancelled);
+    }
+  }
+
+  /**
+   * Search for the files whose name matches the given matcher under the whole root.
+   *
+   * @param matcher the compiled pattern of the names to find
+   * @return the list of matching paths
+   * @throws IOException if the index could not be built
+   */
+  public List<Path> find(NameMatcher matcher) throws IOException {
+    ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<Path>();
+    lookupOrBuild(root, matcher, found::add, () -> false);
+    return new ArrayList<Path>(found);
+  }
+
+  /**
+   * Give the indexed paths under the given directory matching the given matcher to the action,
+   * after loading the index or rebuilding it if it is stale.
+   * During a rebuild, the paths are given as they are walked.
+   * The index is rebuilt without holding its lock, the changes made meanwhile being replayed.
+   *
+   * @param from directory where the search starts
+   * @param matcher the compiled pattern of the names to find
+   * @param action to run on each matching path
+   * @param cancelled telling if the rebuild should stop, the index being left as it was
+   * @throws IOException if the index could not be built
+   */
+  private void lookupOrBuild(Path from, NameMatcher matcher, Consumer<Path> action,
+      BooleanSupplier cancelled) throws IOException {
+    List<Path> found = lookupLoaded(from, matcher);
+    if (found != null) {
+      found.forEach(action);
+      return;
+    }
+    // missing, too old or a hit vanished: the index is stale, rebuild it
+    build(cancelled, path -> {
+      if (path.startsWith(from) && matcher.matchesPath(path)) {
+        action.accept(path);
+      }
+    });
+  }
+
+  /**
+   * Gives the indexed paths under the given directory matching the given matcher,
+   * after loading the index from the disk if needed.
+   *
+   * @param from directory where the search starts
+   * @param matcher the compiled pattern of the names to find
+   * @return the list of matching paths or null if the index has to be rebuilt
+   */
+  private synchronized List<Path> lookupLoaded(Path from, NameMatcher matcher) {
+    load();
+    if (names == null || System.currentTimeMillis() - builtAt >= MAX_AGE) {
+      return null;
+    }
+    return lookup(from, matcher);
+  }
+
+  /**
+   * Gives the indexed paths under the given directory matching the given matcher.
+   * Only the basenames are compared, each of them once.
+   *
+   * @param from directory where the search starts
+   * @param matcher the compiled pattern of the names to find
+   * @return the list of matching paths or null if one of them does not exist anymore
+   */
+  private List<Path> lookup(Path from, NameMatcher matcher) {
+    List<Path> found = new ArrayList<Path>();
+    if (matcher.mode == NameMatcher.Mode.EXACT) {
+      return lookup(from, names.getOrDefault(matcher.pattern, List.of()), found);
+    }
+    for (Map.Entry<String, List<String>> entry : names.entrySet()) {
+      if (matcher.matches(Path.of(entry.getKey()))
+          && lookup(from, entry.getValue(), found) == null) {
+        return null;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Add the given relative paths which are under the given directory to the found ones.
+   *
+   * @param from directory where the search starts
+   * @param relatives paths relative to the root having a matching name
+   * @param found list of the paths found so far
+   * @return the list of the found paths or null if one of them does not exist anymore
+   */
+  private List<Path> lookup(Path from, List<String> relatives, List<Path> found) {
+    for (String relative : relatives) {
+      Path path = root.resolve(relative);
+      if (path.startsWith(from)) {
+        if (!Files.exists(path)) {
+          return null;
+        }
+        found.add(path);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Load the index from the disk if it is not loaded yet and the saved one is not too old.
+   * The paths changed since the session started are indexed again,
+   * unless there were too many of them to be kept.
+   */
+  private void load() {
+    if (names != null || overflows > 0) {
+      return;
+    }
+    try {
+      long modified = Files.getLastModifiedTime(indexpath).toMillis();
+      if (System.currentTimeMillis() - modified < MAX_AGE) {
+        install(read(indexpath), modified);
+      }
+    } catch (IOException exception) {
+      // no usable index on the disk
+    }
+  }
+
+  /**
+   * Read the index file: relative paths separated by record separators.
+   *
+   * @param indexpath path of the index file
+   * @return the relative paths
+   * @throws IOException if the index could not be read
+   */
+  private static List<String> read(Path indexpath) throws IOException {
+    List<String> relatives = new ArrayList<String>();
+    try (BufferedReader reader = Files.newBufferedReader(indexpath, StandardCharsets.UTF_8)) {
+      StringBuilder buffer = new StringBuilder();
+      int ch;
+      while ((ch = reader.read()) != -1) {
+        if (ch == 30) { // record separator
+          relatives.add(buffer.toString());
+          buffer.setLength(0);
+        } else {
+          buffer.append((char) ch);
+        }
+      }
+    }
+    return relatives;
+  }
+
+  /**
+   * Walk the whole root and rebuild the index, then save it.
+   * The lock of the index is not held during the walk, the paths changed meanwhile
+   * being indexed again once it is done.
+   *
+   * @throws IOException if the root could not be walked
+   */
+  public void build() throws IOException {
+    build(() -> false, path -> { });
+  }
+
+  /**
+   * Walk the whole root and rebuild the index, then save it, unless it is cancelled.
+   * An index which could not be saved is still used.
+   * If changes were dropped during the walk, the index is rebuilt again by the next search.
+   *
+   * @param cancelled telling if the walk should stop, the index being left as it was
+   * @param visitor called with each path walked, from several threads
+   * @throws IOException if the root could not be walked
+   */
+  void build(BooleanSupplier cancelled, Consumer<Path> visitor) throws IOException {
+    int seen;
+    synchronized (this) {
+      building++;
+      seen = overflows;
+    }
+    try {
+      List<String> relatives = walk(root, cancelled, visitor);
+      if (cancelled.getAsBoolean()) {
+        return;
+      }
+      synchronized (this) {
+        // changes dropped during the walk: use this index once, then rebuild it
+        install(relatives, overflows == seen ? System.currentTimeMillis() : 0);
+        dirty = true;
+        try {
+          save();
+        } catch (IOException exception) {
+          // the index stays dirty, to be saved again with the session
+        }
+      }
+    } finally {
+      synchronized (this) {
+        building--;
+      }
+    }
+  }
+
+  /**
+   * Replace the index by the given paths, then index again the paths changed meanwhile.
+   *
+   * @param relatives paths relative to the root
+   * @param time when the paths were listed
+   */
+  private void install(List<String> relatives, long time) {
+    names = new HashMap<String, List<String>>();
+    sorted = new TreeSet<String>();
+    for (String relative : relatives) {
+      put(relative);
+    }
+    builtAt = time;
+    for (Path path : pending) {
+      reindex(path);
+      dirty = true;
+    }
+    if (building <= 1) {
+      pending.clear();
+    }
+  }
+
+  /**
+   * List every file of the given subtree.
+   *
+   * @param start root of the subtree to walk
+   * @return the paths relative to the root
+   * @throws IOException if the start directory could not be walked
+   */
+  private List<String> walk(Path start) throws IOException {
+    return walk(start, () -> false, path -> { });
+  }
+
+  /**
+   * List every file of the given subtree until the walk is cancelled.
+   *
+   * @param start root of the subtree to walk
+   * @param cancelled telling if the walk should stop
+   * @param visitor called with each path walked, from several threads
+   * @return the paths relative to the root
+   * @throws IOException if the start directory could not be walked
+   */
+  private List<String> walk(Path start, BooleanSupplier cancelled, Consumer<Path> visitor)
+      throws IOException {
+    ConcurrentLinkedQueue<String> relatives = new ConcurrentLinkedQueue<String>();
+    Directory.walker.walk(start, (path, attributes) -> !path.equals(root), path -> {
+      relatives.add(root.relativize(path).toString());
+      visitor.accept(path);
+    }, cancelled);
+    return new ArrayList<String>(relatives);
+  }
+
+  /**
+   * Add the given relative path to the index under its basename.
+   *
+   * @param relative path relative to the root
+   */
+  private void put(String relative) {
+    if (relative.isEmpty() || !sorted.add(relative)) {
+      return;
+    }
+    names.computeIfAbsent(basename(relative), key -> new ArrayList<String>(1)).add(relative);
+  }
+
+  /**
+   * Gives the last name of the given relative path.
+   *
+   * @param relative path relative to the root
+   * @return the name of the file
+   */
+  private static String basename(String relative) {
+    return relative.substring(relative.lastIndexOf(File.separatorChar) + 1);
+  }
+
+  /**
+   * Tell if the given path is under the root, the root excluded.
+   *
+   * @param path an absolute path
+   * @return true if the path may be indexed
+   */
+  private boolean indexable(Path path) {
+    return path.startsWith(root) && !path.equals(root);
+  }
+
+  /**
+   * Tell if the index can be changed at once, else the changes are kept to be replayed.
+   *
+   * @return true if the index is loaded and not being rebuilt
+   */
+  private boolean ready() {
+    return names != null && building == 0;
+  }
+
+  /**
+   * Keep the given path to be indexed again once the index is loaded or rebuilt.
+   * Past MAX_PENDING paths, they are dropped and the whole index is rebuilt instead.
+   *
+   * @param path the changed file or directory
+   */
+  private void queue(Path path) {
+    if (pending.size() >= MAX_PENDING) {
+      pending.clear();
+      overflows++;
+    } else {
+      pending.add(path);
+    }
+  }
+
+  /**
+   * Tell if the index can be changed at once, else keep the given path to be replayed.
+   *
+   * @param path the changed file or directory
+   * @return true if the index is ready
+   */
+  private synchronized boolean readyOrQueue(Path path) {
+    if (!ready()) {
+      queue(path);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Index the given path and, if it is a directory, everything under it.
+   * The directory is walked without holding the lock of the index.
+   *
+   * @param path the created file or directory
+   */
+  public void add(Path path) {
+    change(path.toAbsolutePath(), false);
+  }
+
+  /**
+   * Remove the given path and everything under it from the index.
+   *
+   * @param path the deleted file or directory
+   */
+  public synchronized void remove(Path path) {
+    path = path.toAbsolutePath();
+    if (!indexable(path)) {
+      return;
+    } else if (!ready()) {
+      queue(path);
+      return;
+    }
+    removeLoaded(path);
+  }
+
+  /**
+   * Update the index entry of the given path according to its existence on the disk.
+   * The directory is walked without holding the lock of the index.
+   *
+   * @param path the file which may have been created or deleted
+   */
+  public void update(Path path) {
+    change(path.toAbsolutePath(), true);
+  }
+
+  /**
+   * Index the given path and everything under it, walked before taking the lock of the index.
+   * If the index is not ready, before or after the walk, the path is kept to be replayed.
+   *
+   * @param path the changed file or directory, absolute
+   * @param replace true if the entries already indexed under the path are removed first
+   */
+  private void change(Path path, boolean replace) {
+    if (!indexable(path) || !readyOrQueue(path)) {
+      return;
+    }
+    List<String> listed = list(path);
+    synchronized (this) {
+      if (!ready()) {
+        queue(path);
+        return;
+      }
+      if (replace) {
+        removeLoaded(path);
+      }
+      listed.forEach(this::put);
+      dirty = dirty || !listed.isEmpty();
+    }
+  }
+
+  /**
+   * Index the given path again according to its existence on the disk, the index being loaded.
+   *
+   * @param path the file which may have been created, changed or deleted
+   */
+  private void reindex(Path path) {
+    removeLoaded(path);
+    List<String> listed = list(path);
+    listed.forEach(this::put);
+    dirty = dirty || !listed.isEmpty();
+  }
+
+  /**
+   * List the given path and everything under it if it exists.
+   *
+   * @param path the file or directory to list
+   * @return the paths relative to the root, empty if it could not be walked
+   */
+  private List<String> list(Path path) {
+    if (!Files.exists(path)) {
+      return List.of();
+    }
+    try {
+      return walk(path);
+    } catch (IOException exception) {
+      // will be picked up by the next rebuild
+      return List.of();
+    }
+  }
+
+  /**
+   * Remove the given path and everything under it, the index being loaded.
+   * Only the entries of the subtree are visited, as a range of the sorted paths.
+   *
+   * @param path the deleted file or directory
+   */
+  private void removeLoaded(Path path) {
+    String relative = root.relativize(path).toString();
+    List<String> removed = new ArrayList<String>(sorted.subSet(relative + File.separatorChar,
+        relative + (char) (File.separatorChar + 1)));
+    if (sorted.contains(relative)) {
+      removed.add(relative);
+    }
+    for (String entry : removed) {
+      sorted.remove(entry);
+      String basename = basename(entry);
+      List<String> paths = names.get(basename);
+      paths.remove(entry);
+      if (paths.isEmpty()) {
+        names.remove(basename);
+      }
+    }
+    dirty = dirty || !removed.isEmpty();
+  }
+
+  /**
+   * Save the index on the disk if it changed since the last save.
+   *
+   * @throws IOException if the index could not be saved
+   */
+  public synchronized void save() throws IOException {
+    if (names == null && !pending.isEmpty() && building == 0) {
+      // files changed without the index being loaded: replay them on the saved index
+      load();
+      pending.clear();
+    }
+    if (names == null ? overflows > 0 : builtAt == 0) {
+      // changes were dropped: the saved index is not trusted, the next search rebuilds it
+      Files.deleteIfExists(indexpath);
+      dirty = false;
+      return;
+    }
+    if (names == null || !dirty) {
+      return;
+    }
+    try {
+      Files.createDirectories(indexpath.getParent());
+    } catch (IOException ioe) {
+      throw new IOException("Could not save the index : " + ioe.getMessage());
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(indexpath, StandardCharsets.UTF_8)) {
+      for (List<String> paths : names.values()) {
+        for (String relative : paths) {
+          writer.write(relative);
+          writer.write(30);
+        }
+      }
+    } catch (IOException ioe) {
+      throw new IOException("Could not save the index : " + ioe.getMessage());
+    }
+    dirty = false;
+  }
+}
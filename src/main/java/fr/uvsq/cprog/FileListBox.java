@@ -0,0 +1,158 @@
+package fr.uvsq.cprog;
+
+import com.googlecode.lanterna.TerminalPosition;
+import com.googlecode.lanterna.TerminalSize;
+import com.googlecode.lanterna.graphics.ThemeDefinition;
+import com.googlecode.lanterna.gui2.AbstractInteractableComponent;
+import com.googlecode.lanterna.gui2.InteractableRenderer;
+import com.googlecode.lanterna.gui2.TextGUIGraphics;
+import com.googlecode.lanterna.input.KeyStroke;
+import java.util.List;
+
+/**
+ * Component showing the files of a directory with their NER.
+ * Only the visible rows are formatted and drawn, whatever the size of the directory.
+ */
+public class FileListBox extends AbstractInteractableComponent<FileListBox> {
+  static final String EMPTY_MESSAGE = "No file in this directory.";
+  static final String DELETED = "(deleted)"; // shown for a file deleted since the last command
+  static final int WIDTH_SAMPLE = 100; // number of rows used to compute the preferred width
+
+  List<String> files = List.of();
+  int selected = -1;
+  int offset = 0;
+  int visibleRows = 1;
+
+  /**
+   * Show the given files, scrolling to the current NER if it is not visible.
+   * The list is not copied.
+   *
+   * @param newFiles the names of the files, the index being the NER, null for a deleted file
+   * @param currentNer the NER to highlight or -1 if there is none
+   */
+  public synchronized void setFiles(List<String> newFiles, int currentNer) {
+    files = newFiles;
+    if (currentNer != selected && currentNer >= 0) {
+      if (currentNer < offset) {
+        offset = currentNer;
+      } else if (currentNer >= offset + visibleRows) {
+        offset = currentNer - visibleRows + 1;
+      }
+    }
+    selected = currentNer;
+    scrollTo(offset);
+  }
+
+  /**
+   * Scroll so that the given row is the first visible one, within the bounds of the list.
+   *
+   * @param row index of the first row to show
+   */
+  private void scrollTo(int row) {
+    offset = Math.max(0, Math.min(row, files.size() - visibleRows));
+    invalidate();
+  }
+
+  /**
+   * Gives the text of the given row.
+   *
+   * @param ner of the file to show
+   * @return the NER followed by the name of the file
+   */
+  String formatRow(int ner) {
+    String name = files.get(ner);
+    return String.valueOf(ner) + " : " + (name != null ? name : DELETED);
+  }
+
+  @Override
+  protected synchronized Result handleKeyStroke(KeyStroke keyStroke) {
+    switch (keyStroke.getKeyType()) {
+      case ArrowUp:
+        scrollTo(offset - 1);
+        return Result.HANDLED;
+      case ArrowDown:
+        scrollTo(offset + 1);
+        return Result.HANDLED;
+      case PageUp:
+        scrollTo(offset - visibleRows);
+        return Result.HANDLED;
+      case PageDown:
+        scrollTo(offset + visibleRows);
+        return Result.HANDLED;
+      case Home:
+        scrollTo(0);
+        return Result.HANDLED;
+      case End:
+        scrollTo(files.size());
+        return Result.HANDLED;
+      default:
+        return super.handleKeyStroke(keyStroke);
+    }
+  }
+
+  @Override
+  protected InteractableRenderer<FileListBox> createDefaultRenderer() {
+    return new FileListBoxRenderer();
+  }
+
+  /**
+   * Renderer drawing the visible rows of the list.
+   */
+  static class FileListBoxRenderer implements InteractableRenderer<FileListBox> {
+    @Override
+    public TerminalPosition getCursorLocation(FileListBox component) {
+      return null;
+    }
+
+    @Override
+    public TerminalSize getPreferredSize(FileListBox component) {
+      synchronized (component) {
+        int width = EMPTY_MESSAGE.length();
+        int end = Math.min(component.files.size(), component.offset + WIDTH_SAMPLE);
+        for (int ner = component.offset; ner < end; ner++) {
+          width = Math.max(width, component.formatRow(ner).length());
+        }
+        return new TerminalSize(width, Math.max(1, component.files.size()));
+      }
+    }
+
+    @Override
+    public void drawComponent(TextGUIGraphics graphics, FileListBox component) {
+      synchronized (component) {
+        int rows = graphics.getSize().getRows();
+        int columns = graphics.getSize().getColumns();
+        if (rows != component.visibleRows) {
+          component.visibleRows = Math.max(1, rows);
+          component.offset = Math.max(0,
+              Math.min(component.offset, component.files.size() - component.visibleRows));
+        }
+
+        ThemeDefinition theme = component.getThemeDefinition();
+        graphics.applyThemeStyle(theme.getNormal());
+        graphics.fill(' ');
+        if (component.files.size() == 0) {
+          graphics.putString(0, 0, EMPTY_MESSAGE);
+          return;
+        }
+
+        for (int row = 0; row < rows; row++) {
+          int ner = component.offset + row;
+          if (ner >= component.files.size()) {
+            break;
+          }
+          String line = component.formatRow(ner);
+          if (line.length() > columns) {
+            line = line.substring(0, columns);
+          }
+          if (ner == component.selected) {
+            graphics.applyThemeStyle(theme.getSelected());
+            graphics.putString(0, row, line);
+            graphics.applyThemeStyle(theme.getNormal());
+          } else {
+            graphics.putString(0, row, line);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package fr.uvsq.cprog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class to read the lines of a text file of any size a few at a time.
+ * The file is read in chunks and only the offset of one line every INDEX_STEP lines
+ * is kept, so that a line is found without keeping the whole file in memory.
+ */
+public class FilePager implements Viewer {
+  static final int BUFFER_SIZE = 64 * 1024;
+  static final int INDEX_STEP = 1024; // lines between two indexed offsets
+  static final int MAX_LINE_LENGTH = 4096; // bytes shown of a line, the rest is cut
+
+  Path path;
+  FileChannel channel;
+  long size;
+  ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  long[] offsets = new long[16]; // offsets[i] is the offset of the line i * INDEX_STEP
+  int checkpoints = 1; // number of known offsets, the first line starting at 0
+  long scannedOffset = 0; // offset up to which the file was scanned
+  long newlines = 0; // number of line feeds before scannedOffset
+
+  /**
+   * Open the given file, nothing being read yet.
+   *
+   * @param path of the text file
+   * @throws IOException if the file could not be opened
+   */
+  public FilePager(Path path) throws IOException {
+    this.path = path;
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    size = channel.size();
+  }
+
+  /**
+   * Gives the number of lines of the file, scanning the rest of it if needed.
+   *
+   * @return the number of lines, a last line without line feed being counted
+   * @throws IOException if the file could not be read
+   */
+  @Override
+  public long lineCount() throws IOException {
+    scanTo(Long.MAX_VALUE);
+    if (size == 0) {
+      return 0;
+    }
+    return newlines + (lastByte() == '\n' ? 0 : 1);
+  }
+
+  /**
+   * Gives the given lines of the file.
+   *
+   * @param first number of the first line, starting at 0
+   * @param count maximum number of lines
+   * @return the lines, fewer than asked at the end of the file
+   * @throws IOException if the file could not be read
+   */
+  @Override
+  public List<String> lines(long first, int count) throws IOException {
+    List<String> lines = new ArrayList<String>(count);
+    long offset = offsetOf(first);
+    if (offset < 0) {
+      return lines;
+    }
+
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    while (offset < size && lines.size() < count) {
+      read(offset);
+      int length = buffer.remaining();
+      for (int i = 0; i < length && lines.size() < count; i++) {
+        byte current = buffer.get(i);
+        if (current == '\n') {
+          lines.add(decode(line));
+          line.reset();
+        } else if (line.size() < MAX_LINE_LENGTH) {
+          line.write(current);
+        }
+      }
+      offset += length;
+    }
+    if (line.size() > 0 && lines.size() < count) {
+      lines.add(decode(line)); // last line without line feed
+    }
+    return lines;
+  }
+
+  @Override
+  public String describe(long first, int count) {
+    return "lines " + (first + 1) + "-" + (first + count) + " (<PageUp>/<PageDown>, line <n|end>)";
+  }
+
+  /**
+   * Decode a line, without its carriage return.
+   *
+   * @param line the bytes of the line
+   * @return the text of the line
+   */
+  private static String decode(ByteArrayOutputStream line) {
+    String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+
+  /**
+   * Gives the offset where the given line starts.
+   *
+   * @param line number of the line, starting at 0
+   * @return the offset or -1 if the file has fewer lines
+   * @throws IOException if the file could not be read
+   */
+  long offsetOf(long line) throws IOException {
+    scanTo(line);
+    int checkpoint = (int) Math.min(line / INDEX_STEP, checkpoints - 1);
+    long offset = offsets[checkpoint];
+    long current = (long) checkpoint * INDEX_STEP;
+
+    // skip the lines after the checkpoint
+    while (current < line && offset < size) {
+      read(offset);
+      int length = buffer.remaining();
+      int i = 0;
+      while (i < length && current < line) {
+        if (buffer.get(i++) == '\n') {
+          current++;
+        }
+      }
+      offset += i;
+    }
+    return current == line && offset < size ? offset : -1;
+  }
+
+  /**
+   * Tell if the given line can be found without scanning more than the next page.
+   *
+   * @param line number of the line, Long.MAX_VALUE for the end of the file
+   * @return true if the file was scanned up to the line or to its end
+   */
+  public boolean isScanned(long line) {
+    return scannedOffset >= size || line <= newlines;
+  }
+
+  /**
+   * Scan the same file up to the given line with its own channel,
+   * so that a large file can be scanned on another thread than the one reading the pages.
+   *
+   * @param line number of the line to reach, Long.MAX_VALUE for the end of the file
+   * @param cancelled tells if the scan should stop
+   * @return a closed pager holding the offsets found, to be adopted by this one
+   * @throws IOException if the file could not be read
+   */
+  public FilePager scanned(long line, BooleanSupplier cancelled) throws IOException {
+    try (FilePager scanner = new FilePager(path)) {
+      scanner.scanTo(line, cancelled);
+      return scanner;
+    }
+  }
+
+  /**
+   * Take the offsets found by the given pager of the same file, if it scanned further.
+   *
+   * @param scanner pager returned by scanned
+   */
+  public void adopt(FilePager scanner) {
+    if (scanner.size == size && scanner.scannedOffset > scannedOffset) {
+      offsets = scanner.offsets;
+      checkpoints = scanner.checkpoints;
+      scannedOffset = scanner.scannedOffset;
+      newlines = scanner.newlines;
+    }
+  }
+
+  /**
+   * Scan the file until the given line is after the last indexed offset, or to its end.
+   *
+   * @param line number of the line to reach
+   * @throws IOException if the file could not be read
+   */
+  private void scanTo(long line) throws IOException {
+    scanTo(line, () -> false);
+  }
+
+  /**
+   * Scan the file until the given line is after the last indexed offset, or to its end,
+   * unless the scan is cancelled.
+   *
+   * @param line number of the line to reach
+   * @param cancelled tells if the scan should stop, checked before each buffer
+   * @throws IOException if the file could not be read
+   */
+  private void scanTo(long line, BooleanSupplier cancelled) throws IOException {
+    while (newlines < line && scannedOffset < size && !cancelled.getAsBoolean()) {
+      read(scannedOffset);
+      int length = buffer.remaining();
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(i) == '\n') {
+          newlines++;
+          if (newlines % INDEX_STEP == 0) {
+            if (checkpoints == offsets.length) {
+              offsets = Arrays.copyOf(offsets, checkpoints * 2);
+            }
+            offsets[checkpoints++] = scannedOffset + i + 1;
+          }
+        }
+      }
+      scannedOffset += length;
+    }
+  }
+
+  /**
+   * Fill the buffer with the bytes of the file from the given offset.
+   *
+   * @param offset where to start reading
+   * @throws IOException if the file could not be read
+   */
+  private void read(long offset) throws IOException {
+    buffer.clear();
+    while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+      // read until the buffer is full or the end of the file
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Gives the last byte of the file.
+   *
+   * @return the last byte
+   * @throws IOException if the file could not be read
+   */
+  private byte lastByte() throws IOException {
+    ByteBuffer last = ByteBuffer.allocate(1);
+    channel.read(last, size - 1);
+    return last.get(0);
+  }
+
+  /**
+   * Close the file.
+   *
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
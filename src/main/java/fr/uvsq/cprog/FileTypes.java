@@ -0,0 +1,281 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class to detect the type of files from their first bytes, as the 'file' command does.
+ * The types are kept with the size and the modification time of the files,
+ * so that a file is read again only if it changed.
+ */
+public class FileTypes {
+  static final int SNIFF_BYTES = 512; // bytes read to detect a type
+  static final int CACHE_SIZE = 4096; // number of files whose type is kept
+  static final String DIRECTORY = "inode/directory";
+  static final String SPECIAL = "inode/x-special"; // pipes, sockets and devices
+  static final String SYMLINK = "inode/symlink"; // link to a missing file
+  static final String EMPTY = "application/x-empty";
+  static final String TEXT = "text/plain";
+  static final String BINARY = "application/octet-stream";
+
+  /**
+   * Type of the files starting with the given bytes.
+   */
+  static class Magic {
+    int offset;
+    byte[] bytes;
+    String type;
+
+    /**
+     * Creates a magic number.
+     *
+     * @param offset where the bytes are in the file
+     * @param bytes the magic bytes, given as ASCII characters
+     * @param type the MIME type of the matching files
+     */
+    Magic(int offset, String bytes, String type) {
+      this(offset, bytes.getBytes(StandardCharsets.ISO_8859_1), type);
+    }
+
+    /**
+     * Creates a magic number from its bytes.
+     *
+     * @param offset where the bytes are in the file
+     * @param bytes the magic bytes
+     * @param type the MIME type of the matching files
+     */
+    Magic(int offset, byte[] bytes, String type) {
+      this.offset = offset;
+      this.bytes = bytes;
+      this.type = type;
+    }
+
+    /**
+     * Check if the given header has the magic bytes.
+     *
+     * @param header first bytes of a file
+     * @param length number of bytes read
+     * @return true if the bytes match
+     */
+    boolean matches(byte[] header, int length) {
+      if (offset + bytes.length > length) {
+        return false;
+      }
+      for (int i = 0; i < bytes.length; i++) {
+        if (header[offset + i] != bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Gives the bytes of the given values, characters or numbers from 0 to 255.
+   *
+   * @param values the bytes
+   * @return the array of the bytes
+   */
+  static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  static final Magic[] MAGICS = {
+    new Magic(0, bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'), "image/png"),
+    new Magic(0, bytes(0xff, 0xd8, 0xff), "image/jpeg"),
+    new Magic(0, "GIF87a", "image/gif"),
+    new Magic(0, "GIF89a", "image/gif"),
+    new Magic(8, "WEBP", "image/webp"),
+    new Magic(0, "%PDF-", "application/pdf"),
+    new Magic(0, bytes('P', 'K', 0x03, 0x04), "application/zip"),
+    new Magic(0, bytes(0x1f, 0x8b), "application/gzip"),
+    new Magic(0, bytes(0xfd, '7', 'z', 'X', 'Z', 0x00), "application/x-xz"),
+    new Magic(0, bytes('7', 'z', 0xbc, 0xaf, 0x27, 0x1c), "application/x-7z-compressed"),
+    new Magic(257, "ustar", "application/x-tar"),
+    new Magic(0, bytes(0x7f, 'E', 'L', 'F'), "application/x-executable"),
+    new Magic(0, bytes(0xca, 0xfe, 0xba, 0xbe), "application/java-vm"),
+    new Magic(0, "OggS", "audio/ogg"),
+    new Magic(0, "fLaC", "audio/flac"),
+    new Magic(4, "ftyp", "video/mp4"),
+  };
+
+  // short magic numbers which a text file may start with, checked only if it is not a text
+  static final Magic[] WEAK_MAGICS = {
+    new Magic(0, "BM", "image/bmp"),
+    new Magic(0, "BZh", "application/x-bzip2"),
+    new Magic(0, "ID3", "audio/mpeg"),
+  };
+
+  /**
+   * Type of a file when it was detected.
+   */
+  static class Entry {
+    long size;
+    FileTime modified;
+    String type;
+  }
+
+  LinkedHashMap<Path, Entry> cache = new LinkedHashMap<Path, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  };
+
+  /**
+   * Gives the type of the given file.
+   *
+   * @param path of the file
+   * @return its MIME type
+   * @throws IOException if the file could not be read
+   */
+  public String detect(Path path) throws IOException {
+    return detect(path, Files.readAttributes(path, BasicFileAttributes.class));
+  }
+
+  /**
+   * Gives the type of the given file, the given attributes telling if it changed.
+   *
+   * @param path of the file
+   * @param attributes of the file, as read with the listing of its directory
+   * @return its MIME type
+   * @throws IOException if the file could not be read
+   */
+  public synchronized String detect(Path path, BasicFileAttributes attributes)
+      throws IOException {
+    if (attributes == null) {
+      return detect(path);
+    }
+    if (attributes.isDirectory()) {
+      return DIRECTORY;
+    } else if (attributes.isSymbolicLink()) {
+      return SYMLINK;
+    } else if (!attributes.isRegularFile()) {
+      // opening a pipe or a device could block until it is written
+      return SPECIAL;
+    }
+    Entry entry = cache.get(path);
+    if (entry != null && entry.size == attributes.size()
+        && entry.modified.equals(attributes.lastModifiedTime())) {
+      return entry.type;
+    }
+
+    entry = new Entry();
+    entry.size = attributes.size();
+    entry.modified = attributes.lastModifiedTime();
+    entry.type = sniff(path);
+    cache.put(path, entry);
+    return entry.type;
+  }
+
+  /**
+   * Tell if the files of the given type can be read by the viewers.
+   *
+   * @param type MIME type given by detect
+   * @return false for the directories and the special files
+   */
+  static boolean isViewable(String type) {
+    return type != null && !type.startsWith("inode/");
+  }
+
+  /**
+   * Tell if the files of the given type are shown as text, the empty files included.
+   *
+   * @param type MIME type given by detect
+   * @return true if the type is a text or the file is empty
+   */
+  static boolean showsAsText(String type) {
+    return type != null && (type.contains("text") || EMPTY.equals(type));
+  }
+
+  /**
+   * Read the first bytes of the given file to find its type.
+   *
+   * @param path of the file
+   * @return its MIME type
+   * @throws IOException if the file could not be read
+   */
+  static String sniff(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SNIFF_BYTES);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+        // read until the buffer is full or the end of the file
+      }
+    }
+    return sniff(buffer.array(), buffer.position());
+  }
+
+  /**
+   * Find the type of a file from its first bytes.
+   *
+   * @param header first bytes of the file
+   * @param length number of bytes read
+   * @return the MIME type
+   */
+  static String sniff(byte[] header, int length) {
+    if (length == 0) {
+      return EMPTY;
+    }
+    for (Magic magic : MAGICS) {
+      if (magic.matches(header, length)) {
+        return magic.type;
+      }
+    }
+    if (isText(header, length)) {
+      return TEXT;
+    }
+    for (Magic magic : WEAK_MAGICS) {
+      if (magic.matches(header, length)) {
+        return magic.type;
+      }
+    }
+    return BINARY;
+  }
+
+  /**
+   * Check if the given bytes look like text: no control characters other than
+   * the usual white spaces, and valid UTF-8 or less than a fifth of non ASCII bytes (Latin-1).
+   *
+   * @param header first bytes of the file
+   * @param length number of bytes read
+   * @return true if the bytes are text
+   */
+  static boolean isText(byte[] header, int length) {
+    int nonAscii = 0;
+    for (int i = 0; i < length; i++) {
+      int ch = header[i] & 0xff;
+      if (ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r' && ch != '\f' && ch != 0x1b) {
+        return false;
+      } else if (ch >= 0x80) {
+        nonAscii++;
+      }
+    }
+    if (nonAscii == 0) {
+      return true;
+    }
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    ByteBuffer bytes = ByteBuffer.wrap(header, 0, length);
+    CoderResult result = decoder.decode(bytes, CharBuffer.allocate(length), false);
+    // a character may be cut at the end of the header
+    return !result.isError() && bytes.remaining() < 4 || nonAscii * 5 < length;
+  }
+}
@@ -0,0 +1,180 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Class to run a search in the background and show its results in the Info panel
+ * as they are found.
+ */
+public class FindJob implements Runnable {
+  static final long REFRESH_PERIOD = 100; // milliseconds between two updates of the panel
+  static final Timer timer = new Timer("find-refresh", true);
+
+  /**
+   * The search to run, giving its results to the action until it is cancelled.
+   */
+  interface Search {
+    void run(Consumer<Path> action, BooleanSupplier cancelled) throws IOException;
+  }
+
+  /**
+   * A search giving its results as lines of text, until it is cancelled.
+   */
+  interface Report {
+    void run(Consumer<String> action, BooleanSupplier cancelled) throws IOException;
+  }
+
+  Interface ui;
+  String name;
+  Search search;
+  Report report = null;
+  volatile boolean cancelled = false;
+  volatile boolean discarded = false; // true once the panel shows the output of another command
+  volatile boolean finished = false;
+  String error = null;
+  AtomicInteger count = new AtomicInteger();
+  ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+  AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  /**
+   * Creates a new job for the given search.
+   *
+   * @param ui where to show the results
+   * @param name searched name, to be shown in the status
+   * @param search to run in the background
+   */
+  public FindJob(Interface ui, String name, Search search) {
+    this.ui = ui;
+    this.name = name;
+    this.search = search;
+  }
+
+  /**
+   * Creates a new job for the given search giving lines of text.
+   *
+   * @param ui where to show the results
+   * @param name searched name, to be shown in the status
+   * @param report to run in the background
+   * @return the job, not started
+   */
+  public static FindJob ofLines(Interface ui, String name, Report report) {
+    FindJob job = new FindJob(ui, name, (Search) null);
+    job.report = report;
+    return job;
+  }
+
+  /**
+   * Start the search on its own thread.
+   */
+  public void start() {
+    Thread thread = new Thread(this, "find");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Ask the search to stop, the results already found stay displayed.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Stop the search when another command replaces its results in the panel.
+   * The results not shown yet are dropped.
+   */
+  public void discard() {
+    discarded = true;
+    cancelled = true;
+  }
+
+  /**
+   * Tell if the search is still running.
+   *
+   * @return true until the search is done or cancelled
+   */
+  public boolean isRunning() {
+    return !finished;
+  }
+
+  @Override
+  public void run() {
+    try {
+      if (report != null) {
+        report.run(this::found, () -> cancelled);
+      } else {
+        search.run(path -> found(path.toString()), () -> cancelled);
+      }
+    } catch (IOException | UncheckedIOException exception) {
+      error = exception.getMessage();
+    }
+    finished = true;
+    ui.invokeLater(this::flush);
+  }
+
+  /**
+   * Queue a result and schedule an update of the panel if none is pending.
+   *
+   * @param line describing the result found by the search
+   */
+  private void found(String line) {
+    if (cancelled) {
+      return;
+    }
+    pending.add(line);
+    count.incrementAndGet();
+    if (scheduled.compareAndSet(false, true)) {
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          ui.invokeLater(FindJob.this::flush);
+        }
+      }, REFRESH_PERIOD);
+    }
+  }
+
+  /**
+   * Add the queued paths to the panel and update the status, on the interface thread.
+   */
+  private void flush() {
+    scheduled.set(false);
+    if (discarded) {
+      pending.clear();
+      return;
+    }
+    String line;
+    while ((line = pending.poll()) != null) {
+      ui.infoTextBox.addLine(line);
+    }
+    ui.setStatus(status());
+    if (error != null) {
+      ui.showError(error);
+      error = null;
+    }
+  }
+
+  /**
+   * Gives the current state of the search.
+   *
+   * @return a short description of the search progress
+   */
+  String status() {
+    String found = String.valueOf(count.get()) + " found";
+    if (!finished) {
+      return "Searching '" + name + "': " + found + " (press <Esc> to cancel)";
+    } else if (cancelled) {
+      return "Search of '" + name + "' cancelled: " + found;
+    } else {
+      return "Search of '" + name + "' done: " + found;
+    }
+  }
+}
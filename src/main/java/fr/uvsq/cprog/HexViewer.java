@@ -0,0 +1,223 @@
+package fr.uvsq.cprog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class to show a binary file as a hexadecimal dump, 16 bytes a line,
+ * reading only the lines shown into a buffer reused for each page.
+ */
+public class HexViewer implements Viewer {
+  static final int BYTES_PER_LINE = 16;
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  Path path;
+  FileChannel channel;
+  long size;
+  ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  long lastMatch = -1; // offset of the last pattern found
+
+  /**
+   * Open the given file, nothing being read yet.
+   *
+   * @param path of the file
+   * @throws IOException if the file could not be opened
+   */
+  public HexViewer(Path path) throws IOException {
+    this.path = path;
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    size = channel.size();
+  }
+
+  @Override
+  public List<String> lines(long first, int count) throws IOException {
+    List<String> lines = new ArrayList<String>(count);
+    long offset = first * BYTES_PER_LINE;
+    if (first < 0 || offset >= size) {
+      return lines;
+    }
+    read(offset, (int) Math.min((long) count * BYTES_PER_LINE, BUFFER_SIZE));
+
+    StringBuilder line = new StringBuilder(80);
+    while (buffer.hasRemaining() && lines.size() < count) {
+      int length = Math.min(BYTES_PER_LINE, buffer.remaining());
+      line.setLength(0);
+      line.append(String.format("%08x ", offset));
+      for (int i = 0; i < BYTES_PER_LINE; i++) {
+        line.append(i == BYTES_PER_LINE / 2 ? "  " : " ");
+        line.append(i < length ? String.format("%02x", buffer.get(buffer.position() + i)) : "  ");
+      }
+      line.append("  |");
+      for (int i = 0; i < length; i++) {
+        byte current = buffer.get();
+        line.append(current >= 0x20 && current < 0x7f ? (char) current : '.');
+      }
+      line.append('|');
+      lines.add(line.toString());
+      offset += length;
+    }
+    return lines;
+  }
+
+  @Override
+  public long lineCount() {
+    return (size + BYTES_PER_LINE - 1) / BYTES_PER_LINE;
+  }
+
+  @Override
+  public String describe(long first, int count) {
+    long from = Math.min(first * BYTES_PER_LINE, size);
+    long to = Math.min((first + count) * BYTES_PER_LINE, size);
+    return String.format("bytes 0x%x-0x%x of %d", from, to, size)
+        + " (<PageUp>/<PageDown>, hex <offset|/pattern>)";
+  }
+
+  /**
+   * Search for the given bytes in the file, reading it a buffer at a time.
+   *
+   * @param pattern the bytes to find
+   * @param from offset where the search starts
+   * @return the offset of the first occurrence after from, or -1 if there is none
+   * @throws IOException if the file could not be read
+   */
+  public long search(byte[] pattern, long from) throws IOException {
+    return search(pattern, from, () -> false);
+  }
+
+  /**
+   * Search for the given bytes in the file with the Boyer-Moore-Horspool algorithm,
+   * reading it a buffer at a time into a buffer of its own,
+   * so that the search can run on another thread than the one reading the pages.
+   *
+   * @param pattern the bytes to find
+   * @param from offset where the search starts
+   * @param cancelled tells if the search should stop, checked before each buffer
+   * @return the offset of the first occurrence after from, or -1 if there is none or if cancelled
+   * @throws IOException if the file could not be read
+   */
+  public long search(byte[] pattern, long from, BooleanSupplier cancelled) throws IOException {
+    int last = pattern.length - 1;
+    if (pattern.length == 0 || pattern.length > BUFFER_SIZE) {
+      return -1;
+    }
+
+    // shift of the window for each value of its last byte
+    int[] shifts = new int[256];
+    Arrays.fill(shifts, pattern.length);
+    for (int i = 0; i < last; i++) {
+      shifts[pattern[i] & 0xff] = last - i;
+    }
+
+    ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+    byte[] bytes = chunk.array();
+    long offset = Math.max(0, from);
+    while (offset + pattern.length <= size && !cancelled.getAsBoolean()) {
+      read(chunk, offset, BUFFER_SIZE);
+      int length = chunk.remaining();
+      int i = 0;
+      while (i + last < length) {
+        int j = last;
+        while (j >= 0 && bytes[i + j] == pattern[j]) {
+          j--;
+        }
+        if (j < 0) {
+          return offset + i;
+        }
+        i += shifts[bytes[i + last] & 0xff];
+      }
+      // the next buffer starts at the first window not checked, across both buffers
+      offset += i;
+    }
+    return -1;
+  }
+
+  /**
+   * Parse a pattern given as hexadecimal bytes ("de ad be ef") or as a quoted text ("PK").
+   *
+   * @param text the pattern typed by the user
+   * @return the bytes to find
+   * @throws IllegalArgumentException if the pattern is not valid
+   */
+  static byte[] parsePattern(String text) throws IllegalArgumentException {
+    text = text.trim();
+    if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+      return text.substring(1, text.length() - 1).getBytes(StandardCharsets.UTF_8);
+    }
+    String hex = text.replace(" ", "");
+    if (hex.isEmpty() || hex.length() % 2 != 0 || !hex.matches("[0-9a-fA-F]+")) {
+      throw new IllegalArgumentException("Invalid pattern, give hexadecimal bytes or a \"text\".");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (int i = 0; i < hex.length(); i += 2) {
+      bytes.write(Integer.parseInt(hex.substring(i, i + 2), 16));
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Parse an offset given in decimal or in hexadecimal with the '0x' prefix.
+   *
+   * @param text the offset typed by the user
+   * @return the offset
+   * @throws IllegalArgumentException if the offset is not a positive number
+   */
+  static long parseOffset(String text) throws IllegalArgumentException {
+    try {
+      long offset = text.startsWith("0x") ? Long.parseLong(text.substring(2), 16)
+          : Long.parseLong(text);
+      if (offset >= 0) {
+        return offset;
+      }
+    } catch (NumberFormatException exception) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Invalid offset.");
+  }
+
+  /**
+   * Fill the buffer with the bytes of the file from the given offset.
+   *
+   * @param offset where to start reading
+   * @param length maximum number of bytes to read
+   * @throws IOException if the file could not be read
+   */
+  private void read(long offset, int length) throws IOException {
+    read(buffer, offset, length);
+  }
+
+  /**
+   * Fill the given buffer with the bytes of the file from the given offset.
+   *
+   * @param buffer to fill, flipped to be read
+   * @param offset where to start reading
+   * @param length maximum number of bytes to read
+   * @throws IOException if the file could not be read
+   */
+  private void read(ByteBuffer buffer, long offset, int length) throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+      // read until the buffer is full or the end of the file
+    }
+    buffer.flip();
+  }
+
+  /**
+   * Close the file.
+   *
+   * @throws IOException if the file could not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
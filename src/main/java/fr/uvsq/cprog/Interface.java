@@ -1,5 +1,6 @@
 package fr.uvsq.cprog;
 
+import com.googlecode.lanterna.TerminalPosition;
 import com.googlecode.lanterna.TextColor;
 import com.googlecode.lanterna.graphics.SimpleTheme;
 import com.googlecode.lanterna.gui2.BasicWindow;
@@ -7,6 +8,7 @@ import com.googlecode.lanterna.gui2.Borders;
 import com.googlecode.lanterna.gui2.DefaultWindowManager;
 import com.googlecode.lanterna.gui2.EmptySpace;
 import com.googlecode.lanterna.gui2.GridLayout;
+import com.googlecode.lanterna.gui2.Label;
 import com.googlecode.lanterna.gui2.MultiWindowTextGUI;
 import com.googlecode.lanterna.gui2.Panel;
 import com.googlecode.lanterna.gui2.TextBox;
@@ -18,6 +20,7 @@ import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
 import com.googlecode.lanterna.terminal.Terminal;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Class to build and manage the interface.
@@ -29,9 +32,10 @@ public class Interface {
   // components
   Panel mainPanel;
   TextBox dirpathTextBox;
-  TextBox filesTextBox;
+  FileListBox filesListBox;
   TextBox infoTextBox;
   TextBox inputTextBox;
+  Label statusLabel;
 
   BasicWindow window;
   MultiWindowTextGUI gui;
@@ -67,17 +71,14 @@ public class Interface {
     mainPanel.addComponent(dirpathTextBox.withBorder(Borders.singleLine("Current Directory Path")));
 
     // FILE LIST
-    filesTextBox = new TextBox();
-    filesTextBox.setLayoutData(GridLayout.createLayoutData(
+    filesListBox = new FileListBox();
+    filesListBox.setLayoutData(GridLayout.createLayoutData(
                 GridLayout.Alignment.FILL,
                 GridLayout.Alignment.FILL,
                 false,
                 true
     ));
-    filesTextBox.setReadOnly(true);
-    filesTextBox.setVerticalFocusSwitching(false);
-    filesTextBox.setHorizontalFocusSwitching(false);
-    filesTextBox.withBorder(Borders.singleLine("Files")).addTo(mainPanel);
+    filesListBox.withBorder(Borders.singleLine("Files")).addTo(mainPanel);
     
     // NOTES, VISU, HELP, FIND
     infoTextBox = new TextBox();
@@ -106,6 +107,18 @@ public class Interface {
     inputTextBox.setHorizontalFocusSwitching(false);
     mainPanel.addComponent(inputTextBox.withBorder(Borders.singleLine("Command Line")));
 
+    // STATUS of the background jobs
+    statusLabel = new Label("");
+    statusLabel.setLayoutData(GridLayout.createLayoutData(
+                GridLayout.Alignment.FILL,
+                GridLayout.Alignment.END,
+                true,
+                false,
+                2,
+                1
+    ));
+    mainPanel.addComponent(statusLabel);
+
     // Create window to hold the panel
     window = new BasicWindow();
     window.setComponent(mainPanel.withBorder(Borders.singleLine("Explorer")));
@@ -160,6 +173,25 @@ public class Interface {
     window.close();
   }
 
+  /**
+   * Add the given lines at the end of the Info panel and scroll to them,
+   * the first lines being removed to keep at most the given number of lines.
+   *
+   * @param lines to add
+   * @param maxLines maximum number of lines of the panel
+   */
+  public void appendInfo(List<String> lines, int maxLines) {
+    for (String line : lines) {
+      infoTextBox.addLine(line);
+    }
+    while (infoTextBox.getLineCount() > maxLines) {
+      infoTextBox.removeLine(1); // the first line is the title
+    }
+    int rows = infoTextBox.getSize().getRows();
+    infoTextBox.getRenderer().setViewTopLeft(
+        new TerminalPosition(0, Math.max(0, infoTextBox.getLineCount() - rows)));
+  }
+
   /**
    * Refresh the interface with the current state of the program.
    *
@@ -167,20 +199,14 @@ public class Interface {
    * @param currentNer the current NER of the program
    */
   public void refresh(Directory currentDirectory, int currentNer) {
+    final long start = System.nanoTime();
     currentDirectory.refresh();
 
     //dirpath
     dirpathTextBox.setText(currentDirectory.dirpath.toString());
     
-    //files
-    if (currentDirectory.files.length > 0) {
-      filesTextBox.setText("0 : " + currentDirectory.files[0]);
-      for (int i = 1; i < currentDirectory.files.length; i++) {
-        filesTextBox.addLine(String.valueOf(i) + " : " + currentDirectory.files[i]);
-      }
-    } else {
-      filesTextBox.setText("No file in this directory.");
-    }
+    //files, only the visible ones are drawn
+    filesListBox.setFiles(currentDirectory.files, currentNer);
 
     //notes
     if (infoTextBox.getText().isEmpty()) {
@@ -192,6 +218,25 @@ public class Interface {
         infoTextBox.setText(exception.getMessage());
       }
     }
+    Metrics.global.time("interface refresh", start);
+  }
+
+  /**
+   * Show the given status of the background jobs under the command line.
+   *
+   * @param status String describing the state of the jobs
+   */
+  public void setStatus(String status) {
+    statusLabel.setText(status);
+  }
+
+  /**
+   * Run the given code on the interface thread, for the updates coming from other threads.
+   *
+   * @param runnable code updating the interface
+   */
+  public void invokeLater(Runnable runnable) {
+    gui.getGUIThread().invokeLater(runnable);
   }
 
   /**
@@ -0,0 +1,225 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class to count the operations of the program and to keep the histograms of their durations,
+ * recorded from any thread without locking.
+ */
+public class Metrics {
+  static final String BYTES_COPIED = "bytes copied";
+  static final String BYTES_HASHED = "bytes hashed";
+  static final String BYTES_VERIFIED = "bytes verified";
+  static final String ENTRIES_WALKED = "entries walked";
+  static final String COMMANDS_FAILED = "commands failed";
+
+  static Metrics global = new Metrics(); // metrics of the whole program
+
+  Map<String, LongAdder> counters = new ConcurrentSkipListMap<String, LongAdder>();
+  Map<String, Histogram> timers = new ConcurrentSkipListMap<String, Histogram>();
+  long startTime = System.nanoTime();
+
+  /**
+   * Add the given amount to a counter.
+   *
+   * @param counter name of the counter
+   * @param amount to add
+   */
+  public void add(String counter, long amount) {
+    counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+  }
+
+  /**
+   * Record the duration of an operation which started at the given time.
+   *
+   * @param timer name of the operation
+   * @param startNanos value of System.nanoTime() when the operation started
+   */
+  public void time(String timer, long startNanos) {
+    long duration = System.nanoTime() - startNanos;
+    timers.computeIfAbsent(timer, name -> new Histogram()).record(duration);
+  }
+
+  /**
+   * Gives the value of a counter.
+   *
+   * @param counter name of the counter
+   * @return its value, 0 if nothing was added
+   */
+  public long get(String counter) {
+    LongAdder adder = counters.get(counter);
+    return adder == null ? 0 : adder.sum();
+  }
+
+  /**
+   * Gives the histogram of an operation.
+   *
+   * @param timer name of the operation
+   * @return the histogram or null if the operation was never recorded
+   */
+  public Histogram histogram(String timer) {
+    return timers.get(timer);
+  }
+
+  /**
+   * Describe the counters and the durations of the operations, in the order of their names.
+   *
+   * @return the lines of the report
+   */
+  public List<String> report() {
+    List<String> lines = new ArrayList<String>();
+    lines.add("Uptime: " + formatDuration(System.nanoTime() - startTime));
+    for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+      lines.add(counter.getKey() + ": " + counter.getValue().sum());
+    }
+    for (Map.Entry<String, Histogram> timer : timers.entrySet()) {
+      Histogram histogram = timer.getValue();
+      lines.add(timer.getKey() + ": " + histogram.count() + " calls"
+          + ", mean " + formatDuration(histogram.mean())
+          + ", p50 " + formatDuration(histogram.percentile(0.5))
+          + ", p90 " + formatDuration(histogram.percentile(0.9))
+          + ", p99 " + formatDuration(histogram.percentile(0.99))
+          + ", max " + formatDuration(histogram.max()));
+    }
+    return lines;
+  }
+
+  /**
+   * Write the report to the given file.
+   *
+   * @param filepath the file to write, replaced if it exists
+   * @throws IOException if the file could not be written
+   */
+  public void writeTo(Path filepath) throws IOException {
+    Files.write(filepath, report());
+  }
+
+  /**
+   * Gives a readable duration.
+   *
+   * @param nanos the duration in nanoseconds
+   * @return the duration with its unit
+   */
+  static String formatDuration(long nanos) {
+    if (nanos < 1000) {
+      return nanos + " ns";
+    } else if (nanos < 1000_000) {
+      return String.format("%.1f us", nanos / 1e3);
+    } else if (nanos < 1000_000_000) {
+      return String.format("%.1f ms", nanos / 1e6);
+    }
+    return String.format("%.1f s", nanos / 1e9);
+  }
+
+  /**
+   * Histogram of durations in log-linear buckets: each power of two is split into
+   * SUB_BUCKETS buckets, so that any value is kept within 1/SUB_BUCKETS of its size.
+   */
+  static class Histogram {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    LongAdder count = new LongAdder();
+    LongAdder total = new LongAdder();
+    AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.
+     *
+     * @param value the duration in nanoseconds, a negative value counting as 0
+     */
+    void record(long value) {
+      value = Math.max(0, value);
+      buckets.incrementAndGet(bucketOf(value));
+      count.increment();
+      total.add(value);
+      max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gives the bucket of a value: the values under SUB_BUCKETS have their own bucket,
+     * the others are grouped by their highest bits.
+     *
+     * @param value a positive value
+     * @return index of its bucket
+     */
+    static int bucketOf(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gives the highest value of a bucket.
+     *
+     * @param bucket index of the bucket
+     * @return the highest value counted in this bucket
+     */
+    static long highestOf(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int shift = bucket / SUB_BUCKETS - 1;
+      long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+      return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Gives the number of values recorded.
+     *
+     * @return the count
+     */
+    long count() {
+      return count.sum();
+    }
+
+    /**
+     * Gives the mean of the values.
+     *
+     * @return the mean, 0 if nothing was recorded
+     */
+    long mean() {
+      long values = count.sum();
+      return values == 0 ? 0 : total.sum() / values;
+    }
+
+    /**
+     * Gives the highest value recorded.
+     *
+     * @return the maximum
+     */
+    long max() {
+      return max.get();
+    }
+
+    /**
+     * Gives the value under which the given fraction of the values are.
+     *
+     * @param fraction between 0 and 1
+     * @return the highest value of the bucket holding this percentile, at most the maximum
+     */
+    long percentile(double fraction) {
+      long rank = Math.max(1, (long) Math.ceil(fraction * count.sum()));
+      long seen = 0;
+      for (int bucket = 0; bucket < buckets.length(); bucket++) {
+        seen += buckets.get(bucket);
+        if (seen >= rank) {
+          return Math.min(highestOf(bucket), max.get());
+        }
+      }
+      return max.get();
+    }
+  }
+}
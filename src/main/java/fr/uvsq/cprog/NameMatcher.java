@@ -0,0 +1,223 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Class to match file names against a pattern compiled once per search.
+ */
+public class NameMatcher {
+  /**
+   * Enum of the ways to compare a name to the pattern.
+   */
+  enum Mode {
+    EXACT,
+    GLOB,
+    REGEX,
+    FUZZY
+  }
+
+  static final int FUZZY_LIMIT = 50; // number of fuzzy matches kept
+
+  Mode mode;
+  String pattern;
+  PathMatcher glob = null;
+  Pattern regex = null;
+  char[] fuzzy = null;
+
+  /**
+   * Compile the given pattern according to the given mode.
+   *
+   * @param mode how to compare the names to the pattern
+   * @param pattern the searched name, glob, regex or sequence of characters
+   * @throws IllegalArgumentException if the glob or the regex is invalid
+   */
+  public NameMatcher(Mode mode, String pattern) throws IllegalArgumentException {
+    this.mode = mode;
+    this.pattern = pattern;
+    switch (mode) {
+      case GLOB:
+        glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        break;
+      case REGEX:
+        regex = Pattern.compile(pattern);
+        break;
+      case FUZZY:
+        fuzzy = pattern.toLowerCase().toCharArray();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Check if the given file name matches the pattern.
+   *
+   * @param name the name of the file, without its directory
+   * @return true if the name matches
+   */
+  public boolean matches(Path name) {
+    switch (mode) {
+      case GLOB:
+        return glob.matches(name);
+      case REGEX:
+        return regex.matcher(name.toString()).matches();
+      case FUZZY:
+        return score(name.toString()) >= 0;
+      default:
+        return name.toString().equals(pattern);
+    }
+  }
+
+  /**
+   * Check if the given path has a name matching the pattern.
+   *
+   * @param path the path of the file
+   * @return true if the name of the path matches
+   */
+  public boolean matchesPath(Path path) {
+    Path name = path.getFileName();
+    return name != null && matches(name);
+  }
+
+  /**
+   * Gives how well the name matches the characters of a fuzzy pattern, in order.
+   * Consecutive characters and a match at the start of the name score higher.
+   *
+   * @param name the name of the file
+   * @return the score of the name or -1 if it does not contain the characters
+   */
+  public int score(String name) {
+    int score = 0;
+    int matched = 0;
+    int previous = -2;
+    for (int i = 0; i < name.length() && matched < fuzzy.length; i++) {
+      if (Character.toLowerCase(name.charAt(i)) == fuzzy[matched]) {
+        score += (i == previous + 1) ? 5 : 1;
+        if (i == 0) {
+          score += 3;
+        }
+        previous = i;
+        matched++;
+      }
+    }
+    if (matched < fuzzy.length) {
+      return -1;
+    }
+    return score * 16 - (name.length() - fuzzy.length);
+  }
+
+  /**
+   * Run the given search and give its results to the action.
+   * For a fuzzy pattern, only the best matches are given, the best first.
+   *
+   * @param search the search to run
+   * @param action to run on each result
+   * @param cancelled telling if the search should stop
+   * @throws IOException if the search failed
+   */
+  public void search(FindJob.Search search, Consumer<Path> action, BooleanSupplier cancelled)
+      throws IOException {
+    if (mode != Mode.FUZZY) {
+      search.run(action, cancelled);
+      return;
+    }
+    Ranking ranking = new Ranking(FUZZY_LIMIT);
+    search.run(ranking::offer, cancelled);
+    ranking.results().forEach(action);
+  }
+
+  /**
+   * Gives a description of the pattern for the user.
+   *
+   * @return the mode and the pattern
+   */
+  public String describe() {
+    switch (mode) {
+      case GLOB:
+        return "the glob '" + pattern + "'";
+      case REGEX:
+        return "the regex '" + pattern + "'";
+      case FUZZY:
+        return "the characters '" + pattern + "'";
+      default:
+        return "the name '" + pattern + "'";
+    }
+  }
+
+  /**
+   * Class keeping the best fuzzy matches in a heap bounded to a given size.
+   */
+  class Ranking {
+    int limit;
+    PriorityQueue<Match> heap;
+
+    /**
+     * Creates an empty ranking.
+     *
+     * @param limit number of matches kept
+     */
+    Ranking(int limit) {
+      this.limit = limit;
+      this.heap = new PriorityQueue<Match>(limit + 1, Comparator.comparingInt(m -> m.score));
+    }
+
+    /**
+     * Rank the given path, dropping the worst match if there are too many.
+     *
+     * @param path a path matching the pattern
+     */
+    synchronized void offer(Path path) {
+      int score = score(path.getFileName().toString());
+      if (heap.size() < limit) {
+        heap.add(new Match(path, score));
+      } else if (heap.peek().score < score) {
+        heap.poll();
+        heap.add(new Match(path, score));
+      }
+    }
+
+    /**
+     * Gives the kept matches, the best first.
+     *
+     * @return the list of the kept paths
+     */
+    synchronized List<Path> results() {
+      List<Match> matches = new ArrayList<Match>(heap);
+      matches.sort(Comparator.comparingInt((Match m) -> m.score).reversed());
+      List<Path> paths = new ArrayList<Path>(matches.size());
+      for (Match match : matches) {
+        paths.add(match.path);
+      }
+      return paths;
+    }
+  }
+
+  /**
+   * A path and its fuzzy score.
+   */
+  static class Match {
+    Path path;
+    int score;
+
+    /**
+     * Creates a match.
+     *
+     * @param path the matching path
+     * @param score of its name
+     */
+    Match(Path path, int score) {
+      this.path = path;
+      this.score = score;
+    }
+  }
+}
@@ -1,19 +1,46 @@
 package fr.uvsq.cprog;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Class to manage notes.
+ * The file 'notes' is a journal: each change is appended as a record, the file being
+ * rewritten with only the current notes once most of its records are outdated.
  */
 public class Notes {
+  static final String FILENAME = "notes";
+  static final char UNIT_SEPARATOR = 31; // between a filename and its note
+  static final char RECORD_SEPARATOR = 30; // after each record
+  static final char ADD_RECORD = 1; // starts a record adding a note to a file
+  static final char REMOVE_RECORD = 2; // starts a record removing the notes of a file
+  // other records set the note of a file, as in the files written before the journal
+
+  static final int COMPACTION_MIN_RECORDS = 16; // smaller files are never compacted
+  static final double COMPACTION_RATIO = 0.5; // part of outdated records to compact
+  static final Object FILE_LOCK = new Object(); // held while a file 'notes' is written
+  static ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "notes-compaction");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   HashMap<String, String> notes;
+  StringBuilder journal = new StringBuilder(); // records not saved yet
+  int records = 0; // number of records in the file 'notes'
+  String savedDirname = null; // directory whose file 'notes' matches the notes
 
   /**
   * Constructor which tries to load any existing notes in the given directory.
@@ -22,46 +49,67 @@ public class Notes {
   */
   public Notes(String dirname) {
     // Create a HashMap object
+    notes = new HashMap<String, String>();
     try {
-      notes = loadNotes(dirname);
+      long start = System.nanoTime();
+      records = loadNotes(dirname, notes);
+      savedDirname = dirname;
+      Metrics.global.time("notes load", start);
     } catch (IOException exception) {
-      notes = new HashMap<String, String>();
+      notes.clear();
+      if (!Files.exists(Paths.get(dirname, FILENAME))) {
+        savedDirname = dirname; // no note is saved as no file
+      }
     }
   }
 
   /**
   * Tries to load any existing notes in the given directory.
+  * The file is read at once then its records are replayed in order.
   *
   * @param dirname directory where to load the notes
-  * @return an HashMap of the loaded notes
+  * @param notes where to put the loaded notes
+  * @return the number of records in the file
   * @throws IOException if the file 'notes' in the given directory could not be read
   */
-  private static HashMap<String, String> loadNotes(String dirname) throws IOException {
-    // Create new HashMap
-    HashMap<String, String> notes = new HashMap<String, String>();
-
+  private static int loadNotes(String dirname, HashMap<String, String> notes)
+      throws IOException {
     // Try to read the file 'notes'
-    FileReader reader = new FileReader(dirname + File.separatorChar + "notes");
-
-    String filename = null; // current filename to attach the note to
-    int ch; // current character to process
-    StringBuilder buffer = new StringBuilder(); // current string to build
-    
-    while ((ch = reader.read()) != -1) { // not EOF
-      if (ch == 31) { // If ch is an unit separator
-        // the filename is complete
-        filename = buffer.toString();
-        buffer = new StringBuilder();
-      } else if (ch == 30 && filename != null) { // If ch is a record separator
-        // the note is complete
-        notes.put(filename, buffer.toString());
-        buffer = new StringBuilder();
-      } else { // If ch is any other character
-        buffer.append((char) ch);
+    byte[] bytes = Files.readAllBytes(Paths.get(dirname, FILENAME));
+    String content = new String(bytes, StandardCharsets.UTF_8);
+
+    int records = 0;
+    int start = 0; // start of the current record
+    int end; // end of the current record
+    while ((end = content.indexOf(RECORD_SEPARATOR, start)) != -1) {
+      char kind = start < end ? content.charAt(start) : RECORD_SEPARATOR;
+      int separator = content.indexOf(UNIT_SEPARATOR, start);
+      if (kind == REMOVE_RECORD) {
+        notes.remove(content.substring(start + 1, end));
+      } else if (separator != -1 && separator < end) { // the record has a filename
+        String note = content.substring(separator + 1, end);
+        if (kind == ADD_RECORD) {
+          appendNote(notes, content.substring(start + 1, separator), note);
+        } else {
+          notes.put(content.substring(start, separator), note);
+        }
       }
+      records++;
+      start = end + 1;
     }
 
-    return notes;
+    return records;
+  }
+
+  /**
+   * Add a note after the existing ones of a file.
+   *
+   * @param notes where to add the note
+   * @param filename for which to add the note to
+   * @param note to add
+   */
+  private static void appendNote(HashMap<String, String> notes, String filename, String note) {
+    notes.merge(filename, note, (previous, added) -> previous + '\n' + added);
   }
 
   /**
@@ -81,10 +129,9 @@ public class Notes {
    * @param note to add
    */
   public void addNote(String filename, String note) {
-    if (notes.containsKey(filename)) {
-      note = notes.get(filename) + '\n' + note;
-    }
-    notes.put(filename, note);
+    appendNote(notes, filename, note);
+    journal.append(ADD_RECORD).append(filename).append(UNIT_SEPARATOR).append(note)
+        .append(RECORD_SEPARATOR);
   }
 
   /**
@@ -93,31 +140,145 @@ public class Notes {
    * @param filename for which to remove the notes
    */
   public void removeNote(String filename) {
-    notes.remove(filename);
+    if (notes.remove(filename) != null) {
+      journal.append(REMOVE_RECORD).append(filename).append(RECORD_SEPARATOR);
+    }
   }
 
   /**
-   * Save the notes in the given Directory.
+   * Save the notes in the given Directory if they changed since they were loaded or saved.
+   * The changes are appended to the file 'notes' of the directory they were loaded from,
+   * which is compacted in the background once most of its records are outdated.
+   * Elsewhere, the notes are written to a temporary file which then replaces 'notes'.
    *
    * @param dirname where to save the notes
+   * @return true if the file 'notes' was written or removed
    * @throws IOException if the notes could not be saved
    */
-  public void saveNotes(String dirname) throws IOException {
-    if (!notes.isEmpty()) {
-      try {
-        FileWriter writer = new FileWriter(dirname + File.separatorChar + "notes", false);
-        for (String filename : notes.keySet()) {
-          writer.write(filename + (char) 31 + notes.get(filename) + (char) 30); 
+  public boolean saveNotes(String dirname) throws IOException {
+    boolean sameFile = dirname.equals(savedDirname);
+    if (sameFile && journal.length() == 0) {
+      return false;
+    }
+
+    final long start = System.nanoTime();
+    Path filepath = Paths.get(dirname, FILENAME);
+    try {
+      synchronized (FILE_LOCK) {
+        if (notes.isEmpty()) {
+          Files.deleteIfExists(filepath);
+          records = 0;
+        } else if (sameFile && Files.exists(filepath)) {
+          try (BufferedWriter writer = Files.newBufferedWriter(filepath, StandardCharsets.UTF_8,
+              StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writer.write(journal.toString());
+          }
+          records += countRecords(journal);
+        } else {
+          writeNotes(filepath, notes);
+          records = notes.size();
+        }
+      }
+    } catch (IOException ioe) {
+      throw new IOException("Could not save the notes : " + ioe.getMessage());
+    }
+    journal.setLength(0);
+    savedDirname = dirname;
+    Metrics.global.time("notes save", start);
+
+    if (records >= COMPACTION_MIN_RECORDS
+        && records - notes.size() > records * COMPACTION_RATIO) {
+      records = notes.size();
+      compactor.execute(() -> {
+        try {
+          compact(dirname);
+        } catch (IOException exception) {
+          // the journal is still valid, it will be compacted after the next changes
         }
-        writer.close();
-      } catch (IOException ioe) {
-        throw new IOException("Could not save the notes : " + ioe.getMessage());
+      });
+    }
+    return true;
+  }
+
+  /**
+   * Count the records of the given text.
+   *
+   * @param text made of records
+   * @return the number of record separators
+   */
+  private static int countRecords(CharSequence text) {
+    return (int) text.chars().filter(ch -> ch == RECORD_SEPARATOR).count();
+  }
+
+  /**
+   * Rewrite the file 'notes' of the given directory with only the current notes.
+   *
+   * @param dirname directory of the file to compact
+   * @throws IOException if the file could not be read or written
+   */
+  static void compact(String dirname) throws IOException {
+    synchronized (FILE_LOCK) {
+      HashMap<String, String> current = new HashMap<String, String>();
+      loadNotes(dirname, current);
+      Path filepath = Paths.get(dirname, FILENAME);
+      if (current.isEmpty()) {
+        Files.deleteIfExists(filepath);
+      } else {
+        writeNotes(filepath, current);
       }
-    } else {
-      Path filepath = Paths.get(dirname, "notes");
-      if (Files.exists(filepath)) {
-        Directory.removeFile(filepath);
+    }
+  }
+
+  /**
+   * Wait until the compactions started so far are over.
+   */
+  public static void awaitCompactions() {
+    try {
+      compactor.submit(() -> { }).get();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException exception) {
+      // nothing was run
+    }
+  }
+
+  /**
+   * Write the given notes to a temporary file which then replaces the given file,
+   * so that an error never leaves a truncated file.
+   *
+   * @param filepath the file to write
+   * @param notes to write, one record for each file
+   * @throws IOException if the file could not be written
+   */
+  private static void writeNotes(Path filepath, Map<String, String> notes) throws IOException {
+    Path temporary = Files.createTempFile(filepath.toAbsolutePath().getParent(),
+        "." + FILENAME, ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        for (Map.Entry<String, String> entry : notes.entrySet()) {
+          writer.write(entry.getKey() + UNIT_SEPARATOR + entry.getValue() + RECORD_SEPARATOR);
+        }
       }
-    } 
+      replace(temporary, filepath);
+    } catch (IOException exception) {
+      Files.deleteIfExists(temporary);
+      throw exception;
+    }
+  }
+
+  /**
+   * Replace the target by the source with an atomic rename if the file system allows it.
+   *
+   * @param source the file to move
+   * @param target the file to replace
+   * @throws IOException if the file could not be moved
+   */
+  private static void replace(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException exception) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
 }
@@ -0,0 +1,366 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Class to keep the notes of every file under the session root in one place,
+ * with an inverted index from the words of the notes to the annotated files,
+ * so that a search does not need to read the notes of every directory.
+ * It is saved in the cache directory of the user, next to the file index.
+ */
+public class NotesDatabase {
+  static final String DATABASE_NAME = "notes";
+
+  FileIndex index;
+  Path dbpath;
+  HashMap<Path, String> notes = null; // absolute path of each file to its note, null until loaded
+  TreeMap<String, Set<Path>> words = new TreeMap<String, Set<Path>>();
+  List<Runnable> pending = new ArrayList<Runnable>(); // changes made while not loaded or rebuilt
+  int building = 0; // number of rebuilds running
+  long builtAt = 0;
+  boolean dirty = false;
+
+  /**
+   * Creates the database of the root of the given file index.
+   * Nothing is read or built before the first search.
+   *
+   * @param index of the files under the root, used to find the notes files
+   */
+  public NotesDatabase(FileIndex index) {
+    this.index = index;
+    this.dbpath = FileIndex.cacheFile(index.root, DATABASE_NAME);
+  }
+
+  /**
+   * Search for the files whose notes contain every word of the query.
+   * A word ending with '*' matches every word starting with it.
+   * The database is rebuilt without holding its lock, the changes made meanwhile being replayed.
+   *
+   * @param query the words to search
+   * @return the matching files, sorted
+   * @throws IOException if the database could not be built
+   */
+  public List<Path> search(String query) throws IOException {
+    if (!loaded()) {
+      build();
+    }
+    return lookup(query);
+  }
+
+  /**
+   * Gives the files whose notes contain every word of the query in the loaded database.
+   *
+   * @param query the words to search
+   * @return the matching files, sorted
+   */
+  private synchronized List<Path> lookup(String query) {
+    if (notes == null) {
+      return List.of();
+    }
+    List<Set<Path>> postings = new ArrayList<Set<Path>>();
+    for (String term : query.trim().split("\\s+")) {
+      boolean prefix = term.endsWith("*");
+      List<String> termWords = split(term);
+      for (int i = 0; i < termWords.size(); i++) {
+        String word = termWords.get(i);
+        if (prefix && i == termWords.size() - 1) {
+          Set<Path> union = new HashSet<Path>();
+          words.subMap(word, word + Character.MAX_VALUE).values().forEach(union::addAll);
+          postings.add(union);
+        } else {
+          postings.add(words.getOrDefault(word, Set.of()));
+        }
+      }
+    }
+    if (postings.isEmpty()) {
+      return List.of();
+    }
+
+    // intersect starting with the rarest word
+    postings.sort(Comparator.comparingInt(Set::size));
+    List<Path> found = new ArrayList<Path>();
+    for (Path path : postings.get(0)) {
+      if (postings.stream().allMatch(posting -> posting.contains(path))) {
+        found.add(path);
+      }
+    }
+    Collections.sort(found);
+    return found;
+  }
+
+  /**
+   * Gives the words of the given text, in lower case.
+   *
+   * @param text to split
+   * @return the list of the words, letters and digits only
+   */
+  static List<String> split(String text) {
+    List<String> list = new ArrayList<String>();
+    for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty()) {
+        list.add(word);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Set the note of the given file, an empty note removing it.
+   * Until the database is loaded or while it is rebuilt, the note is also kept
+   * to be set again once it is.
+   *
+   * @param path of the annotated file
+   * @param note the whole note of the file
+   */
+  public synchronized void set(Path path, String note) {
+    Path absolute = path.toAbsolutePath();
+    change(() -> put(absolute, note));
+  }
+
+  /**
+   * Give the notes of the files under the source to the same files under the destination,
+   * once the source was copied or moved there.
+   * The note of the source itself is kept in the notes file of its directory, it is not copied.
+   *
+   * @param source the copied file or directory
+   * @param destination where it was pasted
+   * @param cut true if the source was moved, its notes being removed
+   */
+  public synchronized void paste(Path source, Path destination, boolean cut) {
+    Path from = source.toAbsolutePath();
+    Path to = destination.toAbsolutePath();
+    change(() -> {
+      for (Map.Entry<Path, String> entry : new ArrayList<Map.Entry<Path, String>>(
+          notes.entrySet())) {
+        Path path = entry.getKey();
+        if (path.startsWith(from) && !path.equals(from)) {
+          put(to.resolve(from.relativize(path)), entry.getValue());
+        }
+        if (cut && path.startsWith(from)) {
+          put(path, "");
+        }
+      }
+    });
+  }
+
+  /**
+   * Apply the given change to the loaded database.
+   * Until the database is loaded or while it is rebuilt, the change is also kept
+   * to be applied again once it is.
+   *
+   * @param change to the notes, run with the lock of the database held
+   */
+  private void change(Runnable change) {
+    if (notes == null || building > 0) {
+      pending.add(change);
+    }
+    if (notes != null) {
+      change.run();
+    }
+  }
+
+  /**
+   * Set the note of the given file in the loaded database.
+   *
+   * @param path absolute path of the annotated file
+   * @param note the whole note of the file, empty to remove it
+   */
+  private void put(Path path, String note) {
+    String previous = note.isEmpty() ? notes.remove(path) : notes.put(path, note);
+    if (previous != null) {
+      unindex(path, previous);
+    }
+    if (!note.isEmpty()) {
+      index(path, note);
+    }
+    dirty = true;
+  }
+
+  /**
+   * Add the given file to the postings of the words of its note.
+   *
+   * @param path of the annotated file
+   * @param note of the file
+   */
+  private void index(Path path, String note) {
+    for (String word : split(note)) {
+      words.computeIfAbsent(word, key -> new HashSet<Path>(2)).add(path);
+    }
+  }
+
+  /**
+   * Remove the given file from the postings of the words of its note.
+   *
+   * @param path of the annotated file
+   * @param note of the file
+   */
+  private void unindex(Path path, String note) {
+    for (String word : split(note)) {
+      Set<Path> posting = words.get(word);
+      if (posting != null && posting.remove(path) && posting.isEmpty()) {
+        words.remove(word);
+      }
+    }
+  }
+
+  /**
+   * Load the database from the disk if needed.
+   *
+   * @return true if the database is loaded and not too old, else it has to be rebuilt
+   */
+  private synchronized boolean loaded() {
+    if (notes == null) {
+      return loadSaved();
+    }
+    return System.currentTimeMillis() - builtAt < FileIndex.MAX_AGE;
+  }
+
+  /**
+   * Read the database saved on the disk if it is not too old,
+   * then set the notes changed since the session started.
+   *
+   * @return true if the database was read
+   */
+  private boolean loadSaved() {
+    try {
+      long modified = Files.getLastModifiedTime(dbpath).toMillis();
+      if (System.currentTimeMillis() - modified < FileIndex.MAX_AGE) {
+        read();
+        builtAt = modified;
+        setPending(0);
+        return true;
+      }
+    } catch (IOException exception) {
+      // no usable database on the disk
+      notes = null;
+    }
+    return false;
+  }
+
+  /**
+   * Apply the changes made before the database was loaded or while it was rebuilt.
+   * They are kept as long as another rebuild may replace the database.
+   *
+   * @param rebuilds number of rebuilds running which are done with the pending changes
+   */
+  private void setPending(int rebuilds) {
+    pending.forEach(Runnable::run);
+    if (building <= rebuilds) {
+      pending.clear();
+    }
+  }
+
+  /**
+   * Read the database file: absolute paths and notes, as in a notes file.
+   *
+   * @throws IOException if the database could not be read
+   */
+  private void read() throws IOException {
+    String content = Files.readString(dbpath, StandardCharsets.UTF_8);
+    notes = new HashMap<Path, String>();
+    words.clear();
+    int start = 0;
+    int end;
+    while ((end = content.indexOf(Notes.RECORD_SEPARATOR, start)) != -1) {
+      int separator = content.indexOf(Notes.UNIT_SEPARATOR, start);
+      if (separator != -1 && separator < end) {
+        Path path = Path.of(content.substring(start, separator));
+        String note = content.substring(separator + 1, end);
+        notes.put(path, note);
+        index(path, note);
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Read every notes file under the root and rebuild the database, then save it.
+   * The lock of the database is not held while the notes files are found and read,
+   * the changes made meanwhile being applied again once it is done.
+   *
+   * @throws IOException if the notes files could not be found
+   */
+  public void build() throws IOException {
+    synchronized (this) {
+      building++;
+    }
+    try {
+      HashMap<Path, String> built = new HashMap<Path, String>();
+      NameMatcher matcher = new NameMatcher(NameMatcher.Mode.EXACT, Notes.FILENAME);
+      for (Path notesFile : index.find(matcher)) {
+        Path dirpath = notesFile.getParent();
+        for (Map.Entry<String, String> entry : new Notes(dirpath.toString()).notes.entrySet()) {
+          built.put(dirpath.resolve(entry.getKey()), entry.getValue());
+        }
+      }
+      synchronized (this) {
+        install(built, System.currentTimeMillis());
+        dirty = true;
+        save();
+      }
+    } finally {
+      synchronized (this) {
+        building--;
+      }
+    }
+  }
+
+  /**
+   * Replace the database by the given notes, then apply again the changes made meanwhile.
+   *
+   * @param built absolute path of each annotated file to its note
+   * @param time when the notes were read
+   */
+  private void install(HashMap<Path, String> built, long time) {
+    notes = built;
+    words.clear();
+    for (Map.Entry<Path, String> entry : notes.entrySet()) {
+      index(entry.getKey(), entry.getValue());
+    }
+    builtAt = time;
+    setPending(1);
+  }
+
+  /**
+   * Save the database on the disk if it changed since the last save.
+   *
+   * @throws IOException if the database could not be saved
+   */
+  public synchronized void save() throws IOException {
+    if (notes == null && !pending.isEmpty() && building == 0 && !loadSaved()) {
+      // no saved database to update, the next search reads the notes files
+      pending.clear();
+    }
+    if (notes == null || !dirty) {
+      return;
+    }
+    try {
+      Files.createDirectories(dbpath.getParent());
+    } catch (IOException ioe) {
+      throw new IOException("Could not save the notes database : " + ioe.getMessage());
+    }
+    try (BufferedWriter writer = Files.newBufferedWriter(dbpath, StandardCharsets.UTF_8)) {
+      for (Map.Entry<Path, String> entry : notes.entrySet()) {
+        writer.write(entry.getKey().toString() + Notes.UNIT_SEPARATOR + entry.getValue()
+            + Notes.RECORD_SEPARATOR);
+      }
+    } catch (IOException ioe) {
+      throw new IOException("Could not save the notes database : " + ioe.getMessage());
+    }
+    dirty = false;
+  }
+}
@@ -0,0 +1,163 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Class to walk a file tree on a fork/join pool, one task per subdirectory.
+ */
+public class ParallelWalker {
+  static final int MAX_DEPTH = 128;
+
+  ForkJoinPool pool;
+
+  /**
+   * Creates a walker using as many threads as there are processors.
+   */
+  public ParallelWalker() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a walker with the given parallelism level.
+   *
+   * @param parallelism number of directories listed at the same time
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public ParallelWalker(int parallelism) throws IllegalArgumentException {
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Stop the threads of the walker once the running walks are done.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Search recursively for the paths accepted by the given matcher.
+   *
+   * @param start directory where to start the search
+   * @param matcher deciding if a path should be returned
+   * @return a stream of the matching paths
+   * @throws IOException if could not access the starting directory
+   */
+  public Stream<Path> find(Path start, BiPredicate<Path, BasicFileAttributes> matcher)
+      throws IOException {
+    ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<Path>();
+    walk(start, matcher, found::add);
+    return found.stream();
+  }
+
+  /**
+   * Walk the tree and give every path accepted by the matcher to the action.
+   * The action is called from several threads at the same time.
+   *
+   * @param start directory where to start the walk
+   * @param matcher deciding if a path should be given to the action
+   * @param action to run on each matching path
+   * @throws IOException if could not access the starting directory
+   */
+  public void walk(Path start, BiPredicate<Path, BasicFileAttributes> matcher,
+      Consumer<Path> action) throws IOException {
+    walk(start, matcher, action, () -> false);
+  }
+
+  /**
+   * Walk the tree until it is done or cancelled.
+   * The directories not listed yet are skipped once the walk is cancelled.
+   *
+   * @param start directory where to start the walk
+   * @param matcher deciding if a path should be given to the action
+   * @param action to run on each matching path
+   * @param cancelled telling if the walk should stop
+   * @throws IOException if could not access the starting directory
+   */
+  public void walk(Path start, BiPredicate<Path, BasicFileAttributes> matcher,
+      Consumer<Path> action, BooleanSupplier cancelled) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(start, BasicFileAttributes.class);
+    if (matcher.test(start, attributes)) {
+      action.accept(start);
+    }
+    if (attributes.isDirectory()) {
+      pool.invoke(new WalkTask(start, 0, matcher, action, cancelled));
+    }
+  }
+
+  /**
+   * Task listing one directory and forking a new task for each of its subdirectories.
+   */
+  private static class WalkTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    Path dirpath;
+    int depth;
+    BiPredicate<Path, BasicFileAttributes> matcher;
+    Consumer<Path> action;
+    BooleanSupplier cancelled;
+
+    /**
+     * Creates the task of the given directory.
+     *
+     * @param dirpath directory to list
+     * @param depth of the directory from the start of the walk
+     * @param matcher deciding if a path should be given to the action
+     * @param action to run on each matching path
+     * @param cancelled telling if the walk should stop
+     */
+    WalkTask(Path dirpath, int depth, BiPredicate<Path, BasicFileAttributes> matcher,
+        Consumer<Path> action, BooleanSupplier cancelled) {
+      this.dirpath = dirpath;
+      this.depth = depth;
+      this.matcher = matcher;
+      this.action = action;
+      this.cancelled = cancelled;
+    }
+
+    @Override
+    protected void compute() {
+      if (cancelled.getAsBoolean()) {
+        return;
+      }
+      List<WalkTask> subtasks = new ArrayList<WalkTask>();
+      int walked = 0;
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dirpath)) {
+        for (Path entry : entries) {
+          walked++;
+          BasicFileAttributes attributes;
+          try {
+            attributes = Files.readAttributes(
+                entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          } catch (IOException exception) {
+            continue; // deleted since listed
+          }
+          if (matcher.test(entry, attributes)) {
+            action.accept(entry);
+          }
+          if (attributes.isDirectory() && depth + 1 < MAX_DEPTH) {
+            subtasks.add(new WalkTask(entry, depth + 1, matcher, action, cancelled));
+          }
+        }
+      } catch (IOException | DirectoryIteratorException exception) {
+        // skip the directories that could not be read
+      }
+      Metrics.global.add(Metrics.ENTRIES_WALKED, walked);
+      invokeAll(subtasks);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class to look for a position in the file shown in the background,
+ * the result being applied on the interface thread once it is found.
+ *
+ * @param <T> the result of the search
+ */
+public class SeekJob<T> implements Runnable {
+
+  /**
+   * The search to run, until it is cancelled.
+   */
+  interface Seek<T> {
+    T run(BooleanSupplier cancelled) throws IOException;
+  }
+
+  /**
+   * What to do with the result, on the interface thread.
+   */
+  interface Found<T> {
+    void accept(T result) throws IOException;
+  }
+
+  Interface ui;
+  String name;
+  Seek<T> seek;
+  Found<T> found;
+  volatile boolean cancelled = false;
+  volatile boolean discarded = false; // true once another command replaced the file shown
+  volatile boolean finished = false;
+  T result = null;
+  String error = null;
+
+  /**
+   * Creates a new job for the given search.
+   *
+   * @param ui where to show the status
+   * @param name of the search, to be shown in the status
+   * @param seek to run in the background
+   * @param found to run with the result on the interface thread
+   */
+  public SeekJob(Interface ui, String name, Seek<T> seek, Found<T> found) {
+    this.ui = ui;
+    this.name = name;
+    this.seek = seek;
+    this.found = found;
+  }
+
+  /**
+   * Start the search on its own thread.
+   */
+  public void start() {
+    ui.setStatus(name + "... (press <Esc> to cancel)");
+    Thread thread = new Thread(this, "seek");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Ask the search to stop, the file shown staying where it is.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Stop the search when another command replaces it, without any status.
+   */
+  public void discard() {
+    discarded = true;
+    cancelled = true;
+  }
+
+  /**
+   * Tell if the search is still running.
+   *
+   * @return true until the search is done or cancelled
+   */
+  public boolean isRunning() {
+    return !finished;
+  }
+
+  @Override
+  public void run() {
+    try {
+      result = seek.run(() -> cancelled);
+    } catch (IOException | UncheckedIOException exception) {
+      error = exception.getMessage();
+    }
+    finished = true;
+    ui.invokeLater(this::finish);
+  }
+
+  /**
+   * Apply the result of the search, on the interface thread.
+   */
+  private void finish() {
+    if (discarded) {
+      return;
+    } else if (cancelled) {
+      ui.setStatus(name + " cancelled.");
+    } else if (error != null) {
+      ui.showError(error);
+    } else {
+      try {
+        found.accept(result);
+      } catch (IOException exception) {
+        ui.showError(exception.getMessage());
+      }
+    }
+  }
+}
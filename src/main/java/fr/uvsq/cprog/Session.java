@@ -11,18 +11,32 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  * This class keeps track of the state of the program during its usage.
  */
-public class Session implements InputFilter {
+public class Session extends CommandEngine implements InputFilter {
+  static final long STATUS_PERIOD = 500; // milliseconds between two updates of the progress
+  static final int PAGE_LINES = 40; // lines shown by visu before the panel is drawn
+  static final long FOLLOW_PERIOD = 250; // milliseconds between two polls of a followed file
+  static final int FOLLOW_LINES = 1000; // lines of a followed file kept in the Info panel
+
   Interface ui;
-  Directory currentDirectory;
-  int currentNer = -1;
-  Path file2copy = null;
-  boolean shouldCut = false;
+  FindJob findJob = null;
+  Viewer pager = null; // file shown in the Info panel, a page at a time
+  int pagerNer = -1;
+  long pagerTop = 0; // first line shown
+  SeekJob<?> seekJob = null; // position looked for in the file shown
+  volatile FileFollower follower = null; // file followed in the Info panel
+  DirectoryWatcher watcher = null;
+  CopyEngine copyEngine = new CopyEngine();
+  Timer statusTimer = new Timer("status", true);
 
   /**
    * Creates a new Directory instance from the given dirname string.
@@ -31,17 +45,100 @@ public class Session implements InputFilter {
    * @throws IOException if the directory doesn't exists
    */ 
   public Session(String dirname) throws IOException {
-    currentDirectory = new Directory(dirname);
+    super(dirname);
     ui = new Interface();
     ui.setInputFilter(this);
     ui.refresh(currentDirectory, currentNer);
+
+    try {
+      watcher = new DirectoryWatcher(this::onDirectoryChanged);
+      watcher.watch(currentDirectory);
+    } catch (IOException exception) {
+      // no live refresh, the listing is still refreshed after each command
+    }
+
+    // show the progress of the copies
+    statusTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        if (copyEngine.isActive()) {
+          ui.invokeLater(() -> ui.setStatus(copyEngine.status()));
+        }
+      }
+    }, STATUS_PERIOD, STATUS_PERIOD);
+
+    // poll the followed file, in case its changes are not reported by the watcher
+    statusTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        if (follower != null) {
+          ui.invokeLater(Session.this::pollFollower);
+        }
+      }
+    }, FOLLOW_PERIOD, FOLLOW_PERIOD);
   } 
 
+  /**
+   * Apply the changes of a watched directory and repaint the interface,
+   * if the user is still in this directory.
+   *
+   * @param directory the watched directory
+   * @param events the changes reported by the watcher
+   */
+  private void onDirectoryChanged(Directory directory, List<WatchEvent<?>> events) {
+    ui.invokeLater(() -> {
+      if (directory == currentDirectory) {
+        currentDirectory.applyChanges(events);
+        ui.refresh(currentDirectory, currentNer);
+      }
+      if (follower != null && directory.dirpath.equals(follower.path.getParent())
+          && events.stream().anyMatch(event -> follower.filename.equals(event.context()))) {
+        pollFollower();
+      }
+    });
+  }
+
+  /**
+   * Watch the current directory for changes, if a watcher is available.
+   */
+  private void watchCurrentDirectory() {
+    if (watcher != null) {
+      watcher.watch(currentDirectory);
+    }
+  }
+
   /**
    * Implements the method onInput of the interface InputFilter
    * to intercept keystrokes from the user and run the appropriate code.
    */
   public boolean onInput(Interactable intercatable, KeyStroke keyStroke) {
+    if (keyStroke.getKeyType() == KeyType.Escape && findJob != null && findJob.isRunning()) {
+      // Stop the running search
+      findJob.cancel();
+      return false;
+    }
+    if (keyStroke.getKeyType() == KeyType.Escape && seekJob != null && seekJob.isRunning()) {
+      // Stop looking for a position in the file shown
+      seekJob.cancel();
+      return false;
+    }
+    if (keyStroke.getKeyType() == KeyType.Escape && follower != null) {
+      // Stop following the file, its lines stay displayed
+      closeFollower();
+      return false;
+    }
+    if (pager != null && ui.infoTextBox.isFocused() && (keyStroke.getKeyType() == KeyType.PageUp
+        || keyStroke.getKeyType() == KeyType.PageDown)) {
+      // Scroll the file shown
+      int rows = pageRows();
+      pagerTop += keyStroke.getKeyType() == KeyType.PageUp ? -rows : rows;
+      try {
+        showPage();
+      } catch (IOException exception) {
+        ui.showError(exception.getMessage());
+      }
+      return false;
+    }
     if (keyStroke.getKeyType() == KeyType.Enter) {
       // Process user input
       try {
@@ -49,6 +146,8 @@ public class Session implements InputFilter {
       } catch (Exception exception) {
         ui.showError(exception.getMessage());
       }
+      // The files deleted since the last command lose their NER
+      currentDirectory.compact();
       // Refresh Interface
       ui.refresh(currentDirectory, currentNer);
 
@@ -68,175 +167,226 @@ public class Session implements InputFilter {
 
   /**
    * Close the session and the interface.
-   * Saves any notes if needed.
+   * Saves any notes and the file index if needed.
    */
   public void close() {
-    // save notes
+    // save notes and index
     try {
-      currentDirectory.saveNotes();
+      save();
     } catch (IOException exception) {
       ui.showError(exception.getMessage());
     }
 
     // close
+    closePager();
+    closeFollower();
+    shutdown();
+    copyEngine.shutdown();
+    statusTimer.cancel();
+    if (watcher != null) {
+      watcher.close();
+    }
     ui.close();
   }
 
 
+  /**
+   * Update the index and the interface once a copy is over.
+   *
+   * @param job the copy which is over
+   * @param directory where the copy was pasted
+   */
+  private void onCopyDone(CopyJob job, Directory directory) {
+    ui.setStatus(job.status());
+    pasted(job, directory);
+    ui.refresh(currentDirectory, currentNer);
+    if (job.state == CopyJob.State.FAILED) {
+      ui.showError("Could not paste " + job.source.getFileName() + ": " + job.error);
+    }
+  }
+
   /**
    * Process the command entered by the user when the Enter key is pressed.
    *
    * @throws IOException to be displayed by the interface if any encountered
    */ 
   public void onEnter() throws IOException {
+    // A new command replaces the results of a running search
+    if (findJob != null) {
+      findJob.discard();
+      findJob = null;
+    }
+    if (seekJob != null) {
+      seekJob.discard();
+      seekJob = null;
+    }
+
     // Input
     String input = ui.inputTextBox.getText();
     ui.inputTextBox.setText("");
     ui.infoTextBox.setText("");
-    
+
     // Parse Command
-    CommandParser result;
-    try {
-      result = new CommandParser(input);
-    } catch (Exception exception) {
-      ui.showError(exception.getMessage());
+    CommandParser result = CommandParser.parse(input);
+    if (!result.isValid()) {
+      ui.showError(result.getError());
       return;
     }
 
-    // Update the NER
-    if (currentDirectory.checkNer(result.getNer())) {
-      currentNer = result.getNer();
-    } else if (result.getNer() != -1) {
-      ui.showError("Invalid NER.");
-      return;
+    // Only the commands moving in the file keep it shown
+    closeFollower();
+    if (result.getCommand() != CommandParser.Commands.LINE
+        && result.getCommand() != CommandParser.Commands.HEX) {
+      closePager();
     }
 
     // Run Command
     try {
-      runCommand(result);
+      execute(result);
     } catch (Exception exception) {
       ui.showError(exception.getMessage());
-      return;
     }
+  }
+
+  @Override
+  void show(String title, List<String> lines) {
+    ui.infoTextBox.setText(title + "\n" + String.join("\n", lines));
+  }
+
+  @Override
+  void stream(String title, String name, FindJob.Report report) {
+    ui.infoTextBox.setText(title);
+    findJob = FindJob.ofLines(ui, name, report);
+    findJob.start();
+  }
+
+  @Override
+  void paste(CopyJob job, Directory directory) {
+    // copy in the background, the user can keep working meanwhile
+    copyEngine.submit(job, () -> ui.invokeLater(() -> onCopyDone(job, directory)));
+    ui.setStatus(copyEngine.status());
+  }
+
+  @Override
+  void moved() {
+    watchCurrentDirectory();
+  }
 
+  @Override
+  void warn(String message) {
+    ui.showError(message);
   }
-  
+
   /**
-   * Call the methods of Directory according to the parsed command.
+   * Run the commands of the interface only.
    *
    * @param result parsed command from CommandParser
    * @throws Exception to be displayed by the interface if any encountered
    */
-  private void runCommand(CommandParser result) throws Exception {
+  @Override
+  void runOther(CommandParser result) throws Exception {
     switch (result.getCommand()) {
-      
-      case ADDNOTE:
-        if (result.getName() != null) {
-          currentDirectory.addNote(currentNer, result.getName());
-        } else {
-          ui.showError("No note given.");
-        }
-        break;
-
-      case COPY:
-        file2copy = currentDirectory.getFilepath(currentNer);
-        shouldCut = false;
-        break;
-        
-      case CUT:
-        file2copy = currentDirectory.getFilepath(currentNer);
-        shouldCut = true;
-        break;
-
       case EXIT:
         close();
         break;
 
-      case FIND:
-        if (result.getName() != null) {
-          ui.infoTextBox.setText(
-              "File(s) matching the name '" + result.getName() + "':");
-          currentDirectory.find(result.getName())
-            .map(path -> path.toString())
-              .forEach(ui.infoTextBox::addLine);
-        } else {
-          ui.showError("No filename to search.");
+      case JOBS:
+        ui.infoTextBox.setText("Copies:");
+        for (CopyJob copyJob : copyEngine.getJobs()) {
+          ui.infoTextBox.addLine(copyJob.status());
         }
-        
         break;
 
-      case GOTO:
-        try {
-          Directory oldDirectory = currentDirectory;
-          currentDirectory = currentDirectory.goTo(currentNer);
-          currentNer = -1;
-          oldDirectory.saveNotes();
-        } catch (IOException exception) {
-          ui.showError(exception.getMessage());
-        }
-
-        break;
-
-      case MKDIR:
-        if (result.getName() != null) {
-          currentDirectory.mkdir(result.getName());
+      case PAUSE:
+        if (copyEngine.current() != null) {
+          copyEngine.current().pause();
+          ui.setStatus(copyEngine.status());
         } else {
-          ui.showError("No directory name given.");
+          ui.showError("No copy to pause.");
         }
         break;
 
-      case PARENT:
-        try {
-          Directory oldDirectory = currentDirectory;
-          currentDirectory = currentDirectory.getParent();
-          currentNer = -1;
-          oldDirectory.saveNotes();
-        } catch (IOException exception) {
-          ui.showError(exception.getMessage());
+      case RESUME:
+        if (copyEngine.current() != null) {
+          copyEngine.current().resume();
+          ui.setStatus(copyEngine.status());
+        } else {
+          ui.showError("No copy to resume.");
         }
         break;
 
-      case PASTE:
-        if (file2copy != null) {
-          currentDirectory.paste(file2copy);
-          if (shouldCut) {
-            currentDirectory.removeFile(file2copy);
-            shouldCut = false;
-            file2copy = null;
-          }
+      case CANCEL:
+        if (copyEngine.current() != null) {
+          copyEngine.current().cancel();
         } else {
-          ui.showError("Nothing to paste.");
+          ui.showError("No copy to cancel.");
         }
         break;
 
-      case REMOVENOTE:
-        currentDirectory.removeNote(currentNer);
-        break;
-
       case VISU:
-        // get mime type
+        // get mime type from the first bytes, unless the file did not change since
         Path path = currentDirectory.getFilepath(currentNer);
-        String type = Files.probeContentType(path);
-
-        if (type != null && type.contains("text")) {
-          // if the file is a text
-          String content = Files.readString(path);
-          ui.infoTextBox.setText(
-              "Content of the file " 
-              + String.valueOf(currentNer) 
-              + ":\n" + content);
-        } else if (type != null && type.contains("image")) {
-          // if the file is an image
-          File image = new File(path.toString());
-          Desktop desktop = Desktop.getDesktop();
-          desktop.open(image);
-        } else {
-          // anything else
+        String type = fileTypes.detect(path, currentDirectory.getAttributes(currentNer));
+
+        if (!FileTypes.isViewable(type)) {
+          // a directory or a special file, which could block the reads
           long size = Files.size(path);
           ui.infoTextBox.setText(String.valueOf(currentNer)
               + " is not a text file but here is its size: " 
               + String.valueOf(size)
               + " bytes");
+        } else if ("follow".equals(result.getName())) {
+          // show the lines added to the file as they are written
+          follower = new FileFollower(path);
+          ui.infoTextBox.setText("Following the file " + String.valueOf(currentNer)
+              + " (<Esc> or a new command to stop):");
+          pollFollower();
+        } else if (FileTypes.showsAsText(type)) {
+          // if the file is a text, show its first lines
+          pager = new FilePager(path);
+          pagerNer = currentNer;
+          pagerTop = 0;
+          showPage();
+        } else if (type.contains("image")) {
+          // if the file is an image
+          File image = new File(path.toString());
+          Desktop desktop = Desktop.getDesktop();
+          desktop.open(image);
+        } else {
+          // any other file, show its first bytes
+          pager = new HexViewer(path);
+          pagerNer = currentNer;
+          pagerTop = 0;
+          showPage();
+        }
+        break;
+
+      case LINE:
+        if (pager == null) {
+          ui.showError("No file shown, use visu first.");
+        } else if (result.getName() == null) {
+          ui.showError("No line number given.");
+        } else {
+          try {
+            goToLine(result.getName().equals("end") ? Long.MAX_VALUE
+                : Long.parseLong(result.getName()) - 1);
+          } catch (NumberFormatException exception) {
+            ui.showError("Invalid line number.");
+            showPage();
+          }
+        }
+        break;
+
+      case HEX:
+        if (!(pager instanceof HexViewer)) {
+          ui.showError("No binary file shown, use visu first.");
+        } else if (result.getName() == null) {
+          ui.showError("No offset or pattern given.");
+        } else if (result.getName().startsWith("/")) {
+          findBytes((HexViewer) pager, HexViewer.parsePattern(result.getName().substring(1)));
+        } else {
+          pagerTop = HexViewer.parseOffset(result.getName()) / HexViewer.BYTES_PER_LINE;
+          showPage();
         }
         break;
 
@@ -250,6 +400,146 @@ public class Session implements InputFilter {
     }
   }
 
+  /**
+   * Gives the number of lines of the file shown at once.
+   *
+   * @return the number of rows of the Info panel, without the title line
+   */
+  private int pageRows() {
+    int rows = ui.infoTextBox.getSize().getRows() - 1;
+    return rows > 0 ? rows : PAGE_LINES;
+  }
+
+  /**
+   * Show the lines of the file from the current top line in the Info panel.
+   * Only these lines are read from the file.
+   *
+   * @throws IOException if the file could not be read
+   */
+  private void showPage() throws IOException {
+    int rows = pageRows();
+    pagerTop = Math.max(0, pagerTop);
+    List<String> lines = pager.lines(pagerTop, rows);
+    if (lines.isEmpty() && pagerTop > 0) {
+      // past the end, show the last lines
+      pagerTop = Math.max(0, pager.lineCount() - rows);
+      lines = pager.lines(pagerTop, rows);
+    }
+    ui.infoTextBox.setText("Content of the file " + String.valueOf(pagerNer)
+        + ", " + pager.describe(pagerTop, lines.size()) + ":\n"
+        + String.join("\n", lines));
+  }
+
+  /**
+   * Show the file from the given line.
+   * The part of a text file not read yet is scanned in the background.
+   *
+   * @param line number of the first line to show, Long.MAX_VALUE for the last page
+   * @throws IOException if the file could not be read
+   */
+  private void goToLine(long line) throws IOException {
+    if (!(pager instanceof FilePager) || ((FilePager) pager).isScanned(line)) {
+      pagerTop = line == Long.MAX_VALUE ? pager.lineCount() - pageRows() : line;
+      showPage();
+      return;
+    }
+    FilePager shown = (FilePager) pager;
+    showPage();
+    seekJob = new SeekJob<FilePager>(ui, line == Long.MAX_VALUE ? "Looking for the end of the file"
+        : "Looking for the line " + (line + 1),
+        cancelled -> shown.scanned(line, cancelled),
+        scanner -> {
+          // unless another file is shown meanwhile
+          if (pager == shown) {
+            shown.adopt(scanner);
+            pagerTop = line == Long.MAX_VALUE ? shown.lineCount() - pageRows() : line;
+            showPage();
+            ui.setStatus("");
+          }
+        });
+    seekJob.start();
+  }
+
+  /**
+   * Show the next occurrence of the given bytes in the binary file shown, found in the background.
+   * The search goes on after the last match if it is visible, else from the first line shown.
+   *
+   * @param viewer the binary file shown
+   * @param pattern the bytes to find
+   * @throws IOException if the file could not be read
+   */
+  private void findBytes(HexViewer viewer, byte[] pattern) throws IOException {
+    long top = pagerTop * HexViewer.BYTES_PER_LINE;
+    long bottom = (pagerTop + pageRows()) * HexViewer.BYTES_PER_LINE;
+    long from = viewer.lastMatch >= top && viewer.lastMatch < bottom ? viewer.lastMatch + 1 : top;
+    showPage();
+    seekJob = new SeekJob<Long>(ui, "Looking for the pattern",
+        cancelled -> viewer.search(pattern, from, cancelled),
+        found -> {
+          // unless another file is shown meanwhile
+          if (pager != viewer) {
+            return;
+          } else if (found < 0) {
+            ui.setStatus("");
+            ui.showError("Pattern not found after the offset " + from + ".");
+          } else {
+            viewer.lastMatch = found;
+            pagerTop = found / HexViewer.BYTES_PER_LINE;
+            showPage();
+            ui.setStatus(String.format("Pattern found at the offset 0x%x.", found));
+          }
+        });
+    seekJob.start();
+  }
+
+  /**
+   * Add the lines written in the followed file since the last poll to the Info panel.
+   */
+  private void pollFollower() {
+    if (follower == null) {
+      return;
+    }
+    try {
+      List<String> lines = follower.poll();
+      if (!lines.isEmpty()) {
+        ui.appendInfo(lines, FOLLOW_LINES);
+      }
+    } catch (IOException exception) {
+      closeFollower();
+      ui.showError("Could not follow the file : " + exception.getMessage());
+    }
+  }
+
+  /**
+   * Stop following the file, if any.
+   */
+  private void closeFollower() {
+    if (follower == null) {
+      return;
+    }
+    try {
+      follower.close();
+    } catch (IOException exception) {
+      // nothing left to read
+    }
+    follower = null;
+  }
+
+  /**
+   * Close the file shown, if any.
+   */
+  private void closePager() {
+    if (pager == null) {
+      return;
+    }
+    try {
+      pager.close();
+    } catch (IOException exception) {
+      // nothing left to read
+    }
+    pager = null;
+  }
+
   /**
    * Gives a String to help.
    *
@@ -260,7 +550,8 @@ public class Session implements InputFilter {
     if (currentNer != -1) {
       // ner is set
       help = "Current NER: " + String.valueOf(currentNer) + "\n";
-      if (Files.isDirectory(currentDirectory.getFilepath(currentNer))) {
+      BasicFileAttributes attributes = currentDirectory.getAttributes(currentNer);
+      if (attributes != null && attributes.isDirectory()) {
         // ner points to a directory
         help += currentDirectory.getFilename(currentNer) + " is a directory.\n\n";
         help += "Commands with the current NER:\n"
@@ -274,7 +565,13 @@ public class Session implements InputFilter {
           + " * .          go to the given NER (needs to be a directory)\n";
       } else {
         // ner points to a file
-        help += currentDirectory.getFilename(currentNer) + " is a file.\n\n";
+        String type;
+        try {
+          type = fileTypes.detect(currentDirectory.getFilepath(currentNer), attributes);
+        } catch (IOException exception) {
+          type = "unreadable";
+        }
+        help += currentDirectory.getFilename(currentNer) + " is a file (" + type + ").\n\n";
         help += "Commands with the current NER:\n"
           + " * help       give help for the given NER\n"
           + " * <new NER>  change the current NER (needs to point to an existing element)\n"
@@ -282,7 +579,8 @@ public class Session implements InputFilter {
           + " * -          remove all notes of the NER\n"
           + " * cut        copy file to clipboard and delete it when pasted\n"
           + " * copy       copy file to clipboard\n"
-          + " * visu       show content of the file if it is a text else show its size\n";
+          + " * visu       show content of the file if it is a text else its bytes\n"
+          + " * visu follow  show the lines added to the file as they are written\n";
       }
     } else {
       // no ner
@@ -293,7 +591,8 @@ public class Session implements InputFilter {
         + " * <NER> -         remove all notes of the given NER\n"
         + " * <NER> cut       copy file to clipboard and delete it when pasted\n"
         + " * <NER> copy      copy file to clipboard\n"
-        + " * <NER> visu      show content of the file if it is a text else show its size\n"
+        + " * <NER> visu      show content of the file if it is a text else its bytes\n"
+        + " * <NER> visu follow  show the lines added to the file as they are written\n"
         + " * <NER> .         go to the given NER (needs to be a directory)\n"
         + " * <NER> help      give help for the given NER\n";
     }
@@ -302,9 +601,23 @@ public class Session implements InputFilter {
       + " * ..                      go to the parent directory of the current one\n"
       + " * mkdir <directory name>  create a new directory with the given name\n"
       + " * find <name to search>   find the given name from this directory recursively\n"
+      + " * find glob:<pattern>     find the names matching a glob (*.txt)\n"
+      + " * find regex:<pattern>    find the names matching a regular expression\n"
+      + " * find fuzzy:<letters>    find the names containing the letters in order\n"
+      + " * search <words>          find the files whose notes contain the words (word*)\n"
+      + " * du                      show the size of this directory and its largest ones\n"
+      + " * dupes                   find the files with the same content from this directory\n"
+      + " * line <n|end>            go to the given line or to the end of the file shown\n"
+      + " * hex <offset|/pattern>   go to an offset (0x1f) or to bytes (/de ad, /\"text\")\n"
       + " * paste                   paste the copied file in the current directory\n"
+      + " * paste verify            paste it, checking each copy with a checksum (CRC32C)\n"
+      + " * jobs                    show the progress of the copies\n"
+      + " * pause / resume          pause or resume the current copy\n"
+      + " * cancel                  cancel the current copy\n"
+      + " * stats                   show the counts and the durations of the operations\n"
       + " * help                    gives general help\n"
       + " * exit                    quit the program\n\n"
+      + "Press <Esc> to cancel a running search or to stop following a file.\n"
       + "Press <Tab> to change the focus to the next window\n"
       + "and navigate the text with the arrows.\n\n"
       + "See the user manual for more informations.";
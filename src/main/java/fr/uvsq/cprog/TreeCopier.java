@@ -0,0 +1,165 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Class to copy a directory tree: the directories are created first,
+ * then the files are copied at the same time on a fixed pool of threads.
+ */
+public class TreeCopier {
+  /**
+   * Interface of the function copying one file.
+   */
+  interface FileCopy {
+    /**
+     * Copy one file.
+     *
+     * @param from the file to copy
+     * @param to the path of the copy, which must not exist
+     * @throws IOException if the file could not be copied
+     */
+    void copy(Path from, Path to) throws IOException;
+  }
+
+  ExecutorService pool;
+
+  /**
+   * Creates a copier using as many threads as there are processors.
+   */
+  public TreeCopier() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a copier with the given number of threads.
+   *
+   * @param parallelism number of files copied at the same time
+   * @throws IllegalArgumentException if the parallelism is not positive
+   */
+  public TreeCopier(int parallelism) throws IllegalArgumentException {
+    pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "tree-copy");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Stop the threads of the copier once the running copies are done.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Copy the source directory to the destination.
+   * A file or a directory which could not be read or copied does not stop the others.
+   *
+   * @param source the directory to copy
+   * @param destination the path of the copy
+   * @param fileCopy function copying each file
+   * @param cancelled telling if the remaining files should be skipped
+   * @return the errors of the files which could not be copied
+   * @throws IOException if the source could not be read or the destination not created
+   */
+  public List<String> copy(Path source, Path destination, FileCopy fileCopy,
+      BooleanSupplier cancelled) throws IOException {
+    List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    List<Path> files = createSkeleton(source, destination, errors);
+
+    List<Future<?>> tasks = new ArrayList<Future<?>>(files.size());
+    for (Path file : files) {
+      tasks.add(pool.submit(() -> {
+        if (cancelled.getAsBoolean()) {
+          return;
+        }
+        Path relative = source.relativize(file);
+        try {
+          fileCopy.copy(file, destination.resolve(relative));
+        } catch (IOException exception) {
+          errors.add(relative + ": " + exception.getMessage());
+        }
+      }));
+    }
+
+    for (Future<?> task : tasks) {
+      try {
+        task.get();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Copy interrupted");
+      } catch (ExecutionException exception) {
+        errors.add(exception.getCause().toString());
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Create the directories of the copy and list the files to copy.
+   * The subtrees which could not be read or created are skipped, their error being kept.
+   *
+   * @param source the directory to copy
+   * @param destination the path of the copy
+   * @param errors where to add the errors of the skipped subtrees
+   * @return the files of the source tree
+   * @throws IOException if the source could not be read or the destination not created
+   */
+  private static List<Path> createSkeleton(Path source, Path destination, List<String> errors)
+      throws IOException {
+    Files.createDirectories(destination);
+    List<Path> files = new ArrayList<Path>();
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+        Path relative = source.relativize(dir);
+        try {
+          Files.createDirectories(destination.resolve(relative));
+        } catch (IOException exception) {
+          errors.add(relative + ": " + exception.getMessage());
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        files.add(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException exception)
+          throws IOException {
+        if (file.equals(source)) {
+          throw exception;
+        }
+        errors.add(source.relativize(file) + ": " + exception.getMessage());
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exception) {
+        if (exception != null) {
+          // the listing stopped before the end of the directory
+          errors.add(source.relativize(dir) + ": " + exception.getMessage());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return files;
+  }
+}
@@ -0,0 +1,37 @@
+package fr.uvsq.cprog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface of the views of a file shown a page at a time in the Info panel.
+ */
+public interface Viewer extends Closeable {
+  /**
+   * Gives the given lines of the view, only these being read from the file.
+   *
+   * @param first number of the first line, starting at 0
+   * @param count maximum number of lines
+   * @return the lines, fewer than asked at the end of the file
+   * @throws IOException if the file could not be read
+   */
+  List<String> lines(long first, int count) throws IOException;
+
+  /**
+   * Gives the number of lines of the view.
+   *
+   * @return the number of lines
+   * @throws IOException if the file could not be read
+   */
+  long lineCount() throws IOException;
+
+  /**
+   * Describe the part of the file shown, for the title of the panel.
+   *
+   * @param first number of the first line shown
+   * @param count number of lines shown
+   * @return the position in the file and the commands to move
+   */
+  String describe(long first, int count);
+}
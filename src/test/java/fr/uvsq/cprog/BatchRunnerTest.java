@@ -0,0 +1,146 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the BatchRunner class.
+ */
+public class BatchRunnerTest {
+  Path root;
+  ByteArrayOutputStream out = new ByteArrayOutputStream();
+  ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+  /**
+   * Create a directory holding a single directory with a text file.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("batch").toRealPath();
+    Files.createDirectory(root.resolve("sub"));
+    Files.writeString(root.resolve("sub").resolve("a.txt"), "hello\nworld\n");
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Run the given script from the root directory.
+   *
+   * @param script the commands
+   * @return the number of errors
+   */
+  private int run(String script) throws IOException {
+    BatchRunner runner = new BatchRunner(root.toString(),
+        new PrintStream(out, true), new PrintStream(err, true));
+    return runner.run(new BufferedReader(new StringReader(script)));
+  }
+
+  /**
+   * The notes of a directory are saved when it is left, before the end of the script.
+   */
+  @Test
+  public void leaveTest() throws IOException {
+    BatchRunner runner = new BatchRunner(root.toString(),
+        new PrintStream(out, true), new PrintStream(err, true));
+    runner.runLine("0 .", 1);
+    runner.runLine("0 + kept note", 2);
+    assertEquals("", new Notes(root.resolve("sub").toString()).getNote("a.txt"));
+
+    runner.runLine("..", 3);
+    assertEquals("kept note", new Notes(root.resolve("sub").toString()).getNote("a.txt"));
+  }
+
+  /**
+   * Test of a script moving in the tree, showing a file, adding a note and copying the file.
+   */
+  @Test
+  public void runTest() throws IOException {
+    int errors = run("0 .\n0 visu\n0 + first note\ncopy\n..\npaste\n"
+        + "find a.txt\nsearch first\n7 visu\nbogus\nstats\nexit\nvisu\n");
+    List<String> lines = out.toString().lines().toList();
+
+    assertEquals(2, errors);
+    assertEquals(List.of(root.resolve("sub").toString(), "0 : a.txt", "hello", "world"),
+        lines.subList(0, 4));
+    assertTrue(lines.contains(root.toString()));
+    assertTrue(lines.contains("0 : sub"));
+    assertTrue(lines.contains("Copying a.txt: done"));
+    assertTrue(lines.contains(root.resolve("sub").resolve("a.txt").toString()));
+    assertTrue(lines.contains(root.resolve("a.txt").toString()));
+    assertEquals("hello\nworld\n", Files.readString(root.resolve("a.txt")));
+    assertTrue(lines.stream().anyMatch(line -> line.startsWith("command visu: ")));
+    assertEquals(List.of("line 9: Invalid NER.",
+        "line 10: Invalid command with one argument. See help."), err.toString().lines().toList());
+
+    // the note was saved at the end
+    Directory sub = new Directory(root.resolve("sub"));
+    int ner = sub.files.indexOf("a.txt");
+    assertEquals("first note", sub.getNote(ner));
+  }
+
+  /**
+   * Test of a verified paste and of an unknown paste option.
+   */
+  @Test
+  public void pasteVerifyTest() throws IOException {
+    int errors = run("0 .\n0 copy\n..\npaste verify\npaste check\n");
+
+    assertEquals(1, errors);
+    assertTrue(out.toString().lines().toList().contains("Copying a.txt: done, verified"));
+    assertEquals("hello\nworld\n", Files.readString(root.resolve("a.txt")));
+    assertEquals(List.of("line 5: Unknown paste option, use paste verify."),
+        err.toString().lines().toList());
+  }
+
+  /**
+   * Test of a cut directory whose note was added in the same script.
+   */
+  @Test
+  public void cutTest() throws IOException {
+    Files.createDirectory(root.resolve("dest"));
+    Directory directory = new Directory(root);
+    int errors = run("0 .\n0 + moved note\n..\n" + directory.files.indexOf("sub") + " cut\n"
+        + directory.files.indexOf("dest") + " .\npaste\n..\n");
+
+    assertEquals(0, errors, err.toString());
+    assertTrue(Files.notExists(root.resolve("sub")));
+    Directory sub = new Directory(root.resolve("dest").resolve("sub"));
+    assertEquals("moved note", sub.getNote(sub.files.indexOf("a.txt")));
+  }
+
+  /**
+   * Test of a search of a note after its file was cut and pasted.
+   */
+  @Test
+  public void searchAfterCutTest() throws IOException {
+    Files.createDirectory(root.resolve("dest"));
+    Directory directory = new Directory(root);
+    int errors = run("0 .\n0 + moved note\n..\nsearch moved\n"
+        + directory.files.indexOf("sub") + " cut\n" + directory.files.indexOf("dest") + " .\n"
+        + "paste\nsearch moved\n");
+    List<String> lines = out.toString().lines().toList();
+
+    assertEquals(0, errors, err.toString());
+    assertEquals(root.resolve("sub").resolve("a.txt").toString(), lines.get(lines.size() - 4));
+    assertEquals(root.resolve("dest").resolve("sub").resolve("a.txt").toString(),
+        lines.get(lines.size() - 1));
+  }
+}
@@ -49,7 +49,11 @@ public class CommandParserTest {
     Arguments.of("-", -1, CommandParser.Commands.REMOVENOTE),
     Arguments.of(" . ", -1, CommandParser.Commands.GOTO),
     Arguments.of("..", -1, CommandParser.Commands.PARENT),
-    Arguments.of("exit", -1, CommandParser.Commands.EXIT)
+    Arguments.of("exit", -1, CommandParser.Commands.EXIT),
+    Arguments.of("Visu", -1, CommandParser.Commands.VISU),
+    Arguments.of("stats", -1, CommandParser.Commands.STATS),
+    Arguments.of("du", -1, CommandParser.Commands.DU),
+    Arguments.of("dupes", -1, CommandParser.Commands.DUPES)
     );
   }
 
@@ -75,6 +79,8 @@ public class CommandParserTest {
     Arguments.of("3 -", 3, CommandParser.Commands.REMOVENOTE, null),
     Arguments.of("find file", -1, CommandParser.Commands.FIND, "file"),
     Arguments.of("mkdir test", -1, CommandParser.Commands.MKDIR, "test"),
+    Arguments.of("line end", -1, CommandParser.Commands.LINE, "end"),
+    Arguments.of("hex 0x10", -1, CommandParser.Commands.HEX, "0x10"),
     Arguments.of("5 exit", 5, CommandParser.Commands.EXIT, null),
     Arguments.of("+ 9 truc", -1, CommandParser.Commands.ADDNOTE, "9 truc")
     );
@@ -100,7 +106,8 @@ public class CommandParserTest {
   static Stream<Arguments> argumentsSize3() {
     return  Stream.of(
     Arguments.of("2 + ceci est un test ", 2, CommandParser.Commands.ADDNOTE, "ceci est un test"),
-    Arguments.of("  2  + hello    world  ", 2, CommandParser.Commands.ADDNOTE, "hello    world")
+    Arguments.of("  2  + hello    world  ", 2, CommandParser.Commands.ADDNOTE, "hello    world"),
+    Arguments.of("search old  deprecated*", -1, CommandParser.Commands.SEARCH, "old  deprecated*")
     );
   }
 
@@ -118,6 +125,32 @@ public class CommandParserTest {
   }  
 
 
+  /**
+   * Arguments for the match mode Test.
+   */
+  static Stream<Arguments> argumentsMatchMode() {
+    return  Stream.of(
+    Arguments.of("find file", NameMatcher.Mode.EXACT, "file"),
+    Arguments.of("find glob:*.md", NameMatcher.Mode.GLOB, "*.md"),
+    Arguments.of("find regex:a b", NameMatcher.Mode.REGEX, "a b"),
+    Arguments.of("find fuzzy:dcmd", NameMatcher.Mode.FUZZY, "dcmd"),
+    Arguments.of("find other:file", NameMatcher.Mode.EXACT, "other:file"),
+    Arguments.of("mkdir glob:dir", NameMatcher.Mode.EXACT, "glob:dir")
+    );
+  }
+
+  /**
+   * Check if the prefix of the name to find is turned into a match mode.
+   */
+  @ParameterizedTest
+  @MethodSource("argumentsMatchMode")
+  public void MatchModeTest(String commandline, NameMatcher.Mode mode, String name) throws Exception {
+    CommandParser result = new CommandParser(commandline);
+    assertEquals(mode, result.getMatchMode());
+    assertEquals(name, result.getName());
+  }
+
+
   /**
    * Bad arguments for the Constructor Test. 
    */
@@ -126,7 +159,9 @@ public class CommandParserTest {
     Arguments.of("2 cuy ", "Invalid command with two arguments. See help."),
     Arguments.of("7 test 6 +", "Invalid command with three arguments. See help."),
     Arguments.of("test 6 +", "Invalid command with two arguments. See help."),
-    Arguments.of("-5 ", "Invalid command with one argument. See help.")
+    Arguments.of("-5 ", "Invalid command with one argument. See help."),
+    Arguments.of("99999999999", "Invalid command with one argument. See help."),
+    Arguments.of("setner", "Invalid command with one argument. See help.")
     );
   }
 
@@ -143,4 +178,28 @@ public class CommandParserTest {
     
     assertEquals(error, exception.getMessage());
   }
+
+  /**
+   * Check that parse reports the errors in its result instead of throwing them.
+   */
+  @ParameterizedTest
+  @MethodSource("badArguments")
+  public void ParseErrorTest(String commandline, String error) {
+    CommandParser result = CommandParser.parse(commandline);
+    assertEquals(false, result.isValid());
+    assertEquals(error, result.getError());
+  }
+
+  /**
+   * Check a valid command parsed without exception.
+   */
+  @Test
+  public void ParseTest() {
+    CommandParser result = CommandParser.parse("  3 +  a   note ");
+    assertEquals(true, result.isValid());
+    assertEquals(null, result.getError());
+    assertEquals(3, result.getNer());
+    assertEquals(CommandParser.Commands.ADDNOTE, result.getCommand());
+    assertEquals("a   note", result.getName());
+  }
 }
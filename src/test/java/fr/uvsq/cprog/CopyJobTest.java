@@ -0,0 +1,134 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the CopyJob and CopyEngine classes.
+ */
+public class CopyJobTest {
+  Path root;
+  Path target;
+
+  /**
+   * Create a small tree to copy.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("copy");
+    Files.createDirectories(root.resolve("src/sub"));
+    Files.write(root.resolve("src/a"), new byte[100 * 1024 + 7]);
+    Files.write(root.resolve("src/sub/b"), "b".getBytes());
+    target = Files.createDirectory(root.resolve("target"));
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Copy a directory and check its content and progress.
+   */
+  @Test
+  public void copyDirectoryTest() throws IOException {
+    CopyJob job = new CopyJob(root.resolve("src"), target, false);
+    job.copy();
+
+    assertEquals(CopyJob.State.DONE, job.state);
+    assertEquals(target.resolve("src"), job.destination);
+    assertArrayEquals(Files.readAllBytes(root.resolve("src/a")),
+        Files.readAllBytes(target.resolve("src/a")));
+    assertEquals("b", Files.readString(target.resolve("src/sub/b")));
+    assertEquals(2, job.filesDone.get());
+    assertEquals(job.totalBytes, job.bytesDone.get());
+    assertTrue(Files.exists(root.resolve("src")));
+  }
+
+  /**
+   * A cut moves the source, a second copy is renamed.
+   */
+  @Test
+  public void cutTest() throws IOException {
+    new CopyJob(root.resolve("src/sub/b"), target, false).copy();
+    CopyJob job = new CopyJob(root.resolve("src/sub/b"), target, true);
+    job.copy();
+
+    assertEquals(target.resolve("b-copy"), job.destination);
+    assertEquals("b", Files.readString(target.resolve("b-copy")));
+    assertFalse(Files.exists(root.resolve("src/sub/b")));
+
+    // a directory is moved with its content
+    job = new CopyJob(root.resolve("src"), target, true);
+    job.copy();
+    assertEquals(CopyJob.State.DONE, job.state);
+    assertTrue(Files.exists(target.resolve("src/a")));
+    assertFalse(Files.exists(root.resolve("src")));
+  }
+
+  /**
+   * A verified copy of a directory checks each file.
+   */
+  @Test
+  public void verifyTest() throws IOException {
+    long verified = Metrics.global.get(Metrics.BYTES_VERIFIED);
+    CopyJob job = new CopyJob(root.resolve("src"), target, false, true);
+    job.copy();
+
+    assertEquals(CopyJob.State.DONE, job.state);
+    assertArrayEquals(Files.readAllBytes(root.resolve("src/a")),
+        Files.readAllBytes(target.resolve("src/a")));
+    assertEquals("b", Files.readString(target.resolve("src/sub/b")));
+    assertEquals(2, job.filesDone.get());
+    assertEquals(job.totalBytes, Metrics.global.get(Metrics.BYTES_VERIFIED) - verified);
+    assertTrue(job.status().endsWith("done, verified"));
+  }
+
+  /**
+   * A cancelled job does not copy anything.
+   */
+  @Test
+  public void cancelTest() throws IOException {
+    CopyJob job = new CopyJob(root.resolve("src"), target, true);
+    job.cancel();
+    job.run();
+
+    assertEquals(CopyJob.State.CANCELLED, job.state);
+    assertFalse(Files.exists(target.resolve("src")));
+    assertTrue(Files.exists(root.resolve("src")));
+  }
+
+  /**
+   * The engine runs the jobs in the background and reports their failure.
+   */
+  @Test
+  public void engineTest() throws InterruptedException {
+    CopyEngine engine = new CopyEngine();
+    CountDownLatch latch = new CountDownLatch(2);
+    CopyJob job = new CopyJob(root.resolve("src"), target, false);
+    CopyJob failing = new CopyJob(root.resolve("nofile"), target, false);
+
+    engine.submit(job, latch::countDown);
+    engine.submit(failing, latch::countDown);
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    assertEquals(CopyJob.State.DONE, job.state);
+    assertEquals(CopyJob.State.FAILED, failing.state);
+    assertFalse(engine.isActive());
+    engine.shutdown();
+  }
+}
@@ -0,0 +1,138 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the DirectoryCache class.
+ */
+public class DirectoryCacheTest {
+  Path root;
+  List<Directory> saved = new ArrayList<Directory>();
+
+  /**
+   * Create a few directories.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("cache").toRealPath();
+    for (String name : List.of("a", "b", "c")) {
+      Files.createDirectories(root.resolve(name));
+    }
+    Files.createFile(root.resolve("a/file"));
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Going back to a directory gives the loaded one, listed again only if it changed.
+   */
+  @Test
+  public void getTest() throws IOException {
+    DirectoryCache cache = new DirectoryCache(saved::add);
+    Directory a = cache.get(root.resolve("a"));
+    Directory parent = a.getParent(cache);
+
+    assertSame(a, parent.goTo(parent.files.indexOf("a"), cache));
+    assertSame(a, cache.get(root.resolve("b/../a")));
+
+    Files.createFile(root.resolve("a/other"));
+    a.listing.invalidate();
+    assertEquals(2, cache.get(root.resolve("a")).files.size());
+
+    assertThrows(IOException.class, () -> cache.get(root.resolve("missing")));
+    assertThrows(IOException.class, () -> cache.get(root.resolve("a/file")));
+  }
+
+  /**
+   * The least recently used directory is evicted and its notes are written back.
+   */
+  @Test
+  public void evictTest() throws IOException {
+    DirectoryCache cache = new DirectoryCache(2, DirectoryCache.DEFAULT_MAX_WEIGHT, saved::add);
+    Directory a = cache.get(root.resolve("a"));
+    a.addNote(0, "a note");
+    cache.get(root.resolve("b"));
+    cache.get(root.resolve("a"));
+    cache.get(root.resolve("c"));
+
+    // b was the least recently used
+    assertTrue(saved.isEmpty());
+    assertSame(a, cache.get(root.resolve("a")));
+    cache.get(root.resolve("b")); // evicts c
+    assertTrue(saved.isEmpty());
+    cache.get(root.resolve("c")); // evicts a
+    assertEquals(List.of(a), saved);
+    assertEquals("a note", new Notes(root.resolve("a").toString()).getNote("file"));
+    assertNotSame(a, cache.get(root.resolve("a")));
+  }
+
+  /**
+   * Directories are evicted when they hold too many files.
+   */
+  @Test
+  public void weightTest() throws IOException {
+    DirectoryCache cache = new DirectoryCache(10, 3, saved::add);
+    Directory a = cache.get(root.resolve("a"));
+    Directory directory = cache.get(root);
+
+    assertEquals(1, cache.directories.size());
+    assertSame(directory, cache.get(root));
+    assertNotSame(a, cache.get(root.resolve("a")));
+  }
+
+  /**
+   * The notes of every cached directory are saved on demand.
+   */
+  @Test
+  public void saveAllTest() throws IOException {
+    DirectoryCache cache = new DirectoryCache(saved::add);
+    Directory a = cache.get(root.resolve("a"));
+    cache.get(root.resolve("b"));
+    a.addNote(0, "a note");
+
+    cache.saveAll();
+    cache.saveAll();
+    assertEquals(List.of(a), saved);
+    assertThrows(IllegalArgumentException.class, () -> new DirectoryCache(0, 1, saved::add));
+  }
+
+  /**
+   * The directories under a copied path are saved before, and dropped once it moved.
+   */
+  @Test
+  public void underTest() throws IOException {
+    Files.createFile(root.resolve("b/file"));
+    DirectoryCache cache = new DirectoryCache(saved::add);
+    Directory a = cache.get(root.resolve("a"));
+    Directory b = cache.get(root.resolve("b"));
+    a.addNote(0, "a note");
+    b.addNote(0, "b note");
+
+    cache.saveUnder(root.resolve("a"));
+    assertEquals(List.of(a), saved);
+    assertEquals("a note", new Notes(root.resolve("a").toString()).getNote("file"));
+
+    cache.removeUnder(root.resolve("a"));
+    assertEquals(List.of(root.resolve("b")), List.copyOf(cache.directories.keySet()));
+    assertNotSame(a, cache.get(root.resolve("a")));
+  }
+}
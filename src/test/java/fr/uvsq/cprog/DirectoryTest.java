@@ -1,8 +1,12 @@
 package fr.uvsq.cprog;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.List;
 import java.util.stream.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.*;
@@ -77,6 +81,88 @@ public class DirectoryTest {
     assertTrue(actualMessage.contains(expectedMessage));
   }
 
+  /**
+   * Check if the listing is only read again after a change.
+   */
+  @Test
+  public void refreshTest() throws IOException {
+    Directory dir = new Directory("test");
+    DirectoryListing listing = dir.listing;
+
+    dir.refresh();
+    assertTrue(listing == dir.listing);
+
+    dir.mkdir("new");
+    dir.refresh();
+    assertTrue(listing != dir.listing);
+    assertTrue(dir.files.contains("new"));
+    dir.removeFile(Paths.get("test/new"));
+  }
+
+  /**
+   * Check if the events of a watcher are applied to the listing.
+   */
+  @Test
+  public void applyChangesTest() throws IOException {
+    Path root = Files.createTempDirectory("listing");
+    Files.createFile(root.resolve("a"));
+    Files.createFile(root.resolve("b"));
+    Directory dir = new Directory(root);
+
+    Files.createFile(root.resolve("c"));
+    Files.delete(root.resolve("a"));
+    dir.applyChanges(List.of(
+        event(StandardWatchEventKinds.ENTRY_CREATE, "c"),
+        event(StandardWatchEventKinds.ENTRY_DELETE, "a")));
+
+    // the deleted file leaves an empty slot until the listing is compacted
+    assertEquals(3, dir.files.size());
+    assertFalse(dir.checkNer(dir.files.indexOf(null)));
+    assertEquals("c", dir.getFilename(2));
+    assertTrue(dir.getAttributes(2).isRegularFile());
+    assertFalse(dir.listing.isStale());
+    dir.compact();
+    assertEquals(List.of("b", "c"), dir.files);
+
+    // an overflow lists the directory again
+    Files.createFile(root.resolve("d"));
+    dir.applyChanges(List.of(event(StandardWatchEventKinds.OVERFLOW, null)));
+    assertEquals(3, dir.files.size());
+
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Creates an event as a WatchService would report it.
+   */
+  static WatchEvent<Path> event(WatchEvent.Kind<?> kind, String name) {
+    return new WatchEvent<Path>() {
+      @SuppressWarnings("unchecked")
+      public WatchEvent.Kind<Path> kind() {
+        return (WatchEvent.Kind<Path>) kind;
+      }
+
+      public int count() {
+        return 1;
+      }
+
+      public Path context() {
+        return name == null ? null : Paths.get(name);
+      }
+    };
+  }
+
+  /**
+   * Check if the attributes are read with the listing.
+   */
+  @Test
+  public void getAttributesTest() throws IOException {
+    Directory dir = new Directory("test");
+    for (int ner = 0; ner < dir.files.size(); ner++) {
+      assertEquals(Files.isDirectory(dir.getFilepath(ner)), dir.getAttributes(ner).isDirectory());
+    }
+  }
+
   @Test
   public void pasteFileTest() throws IOException, IllegalArgumentException {
     Directory dir = new Directory("test");
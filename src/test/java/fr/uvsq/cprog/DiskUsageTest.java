@@ -0,0 +1,124 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the DiskUsage class.
+ */
+public class DiskUsageTest {
+  Path root;
+  DiskUsage diskUsage = new DiskUsage(2);
+
+  /**
+   * Create a tree of two branches.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("du").toRealPath();
+    Files.write(root.resolve("top.bin"), new byte[10]);
+    Files.createDirectories(root.resolve("big").resolve("deep"));
+    Files.write(root.resolve("big").resolve("deep").resolve("a.bin"), new byte[3000]);
+    Files.write(root.resolve("big").resolve("b.bin"), new byte[1000]);
+    Files.createDirectory(root.resolve("small"));
+    Files.write(root.resolve("small").resolve("c.bin"), new byte[100]);
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    diskUsage.shutdown();
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Test of the size of a tree and of a file.
+   */
+  @Test
+  public void measureTest() throws IOException {
+    DiskUsage.Usage usage = diskUsage.measure(root);
+    assertEquals(4110, usage.bytes);
+    assertEquals(4, usage.files);
+    assertEquals(4, usage.directories);
+
+    usage = diskUsage.measure(root.resolve("top.bin"));
+    assertEquals(10, usage.bytes);
+    assertEquals(1, usage.files);
+  }
+
+  /**
+   * Only the directories which changed are listed again.
+   */
+  @Test
+  public void cacheTest() throws IOException {
+    diskUsage.measure(root);
+    DiskUsage.Node deep = diskUsage.nodeAt(root.resolve("big").resolve("deep"));
+    DiskUsage.Node smallNode = diskUsage.nodeAt(root.resolve("small"));
+
+    Files.write(root.resolve("small").resolve("d.bin"), new byte[50]);
+    // make sure that the modification time changed, whatever its precision
+    Path small = root.resolve("small");
+    Files.setLastModifiedTime(small,
+        FileTime.fromMillis(Files.getLastModifiedTime(small).toMillis() + 1000));
+    DiskUsage.Usage usage = diskUsage.measure(root);
+    assertEquals(4160, usage.bytes);
+    assertSame(deep, diskUsage.nodeAt(root.resolve("big").resolve("deep")));
+    assertNotSame(smallNode, diskUsage.nodeAt(small));
+
+    // a removed directory is forgotten
+    Directory.removeFile(root.resolve("big"));
+    usage = diskUsage.measure(root);
+    assertEquals(160, usage.bytes);
+    assertEquals(null, diskUsage.nodeAt(root.resolve("big")));
+  }
+
+  /**
+   * The trees measured inside another are kept in it, the least recently measured ones
+   * being forgotten once too many directories are kept.
+   */
+  @Test
+  public void boundTest() throws IOException {
+    diskUsage.maxNodes = 3;
+    diskUsage.measure(root.resolve("big"));
+    diskUsage.measure(root.resolve("small"));
+    assertEquals(List.of(root.resolve("big"), root.resolve("small")),
+        List.copyOf(diskUsage.roots.keySet()));
+
+    DiskUsage.Node smallNode = diskUsage.nodeAt(root.resolve("small"));
+    diskUsage.measure(root);
+    assertEquals(null, diskUsage.nodeAt(root));
+    assertEquals(List.of(), List.copyOf(diskUsage.roots.keySet()));
+
+    diskUsage.maxNodes = DiskUsage.MAX_NODES;
+    diskUsage.measure(root);
+    diskUsage.measure(root.resolve("small"));
+    assertEquals(List.of(root), List.copyOf(diskUsage.roots.keySet()));
+    assertNotSame(smallNode, diskUsage.nodeAt(root.resolve("small")));
+    assertEquals(4110, diskUsage.measure(root).bytes);
+  }
+
+  /**
+   * Test of the description, the largest subdirectory first.
+   */
+  @Test
+  public void describeTest() throws IOException {
+    List<String> lines = diskUsage.describe(root, 10);
+    assertEquals(List.of("4.0 KB in 4 files and 4 directories",
+        String.format("%10s  big/", "3.9 KB"),
+        String.format("%10s  small/", "100 B"),
+        String.format("%10s  (1 files of this directory)", "10 B")), lines);
+    assertEquals(3, diskUsage.describe(root, 1).size());
+  }
+}
@@ -0,0 +1,98 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the DuplicateFinder class.
+ */
+public class DuplicateFinderTest {
+  static final int SIZE = DuplicateFinder.BLOCK_SIZE * 3;
+
+  Path root;
+  DuplicateFinder finder = new DuplicateFinder(2);
+
+  /**
+   * Create files of the same size which differ at their start, in their middle or not at all.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("dupes").toRealPath();
+    Files.createDirectories(root.resolve("a").resolve("b"));
+    byte[] bytes = new byte[SIZE];
+    Files.write(root.resolve("same1.bin"), bytes);
+    Files.write(root.resolve("a").resolve("b").resolve("same2.bin"), bytes);
+    bytes[SIZE / 2] = 1;
+    Files.write(root.resolve("a").resolve("middle.bin"), bytes);
+    bytes[0] = 1;
+    Files.write(root.resolve("a").resolve("start.bin"), bytes);
+    Files.writeString(root.resolve("small1.txt"), "small");
+    Files.writeString(root.resolve("a").resolve("small2.txt"), "small");
+    Files.writeString(root.resolve("other.txt"), "other");
+    Files.createFile(root.resolve("empty1"));
+    Files.createFile(root.resolve("empty2"));
+    Files.createLink(root.resolve("a").resolve("link.bin"), root.resolve("same1.bin"));
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    finder.shutdown();
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Test of the groups found, the hard links and the empty files being ignored.
+   */
+  @Test
+  public void findTest() throws IOException {
+    List<DuplicateFinder.Group> groups = finder.find(root, () -> false);
+    assertEquals(2, groups.size());
+
+    assertEquals(SIZE, groups.get(0).size);
+    assertEquals(2, groups.get(0).paths.size());
+    assertEquals(root.resolve("a").resolve("b").resolve("same2.bin"), groups.get(0).paths.get(0));
+    // only one of the two links to the same file is kept, whichever was walked first
+    assertTrue(List.of(root.resolve("same1.bin"), root.resolve("a").resolve("link.bin"))
+        .contains(groups.get(0).paths.get(1)));
+    assertEquals(SIZE, groups.get(0).wasted());
+
+    assertEquals(5, groups.get(1).size);
+    assertEquals(List.of(root.resolve("a").resolve("small2.txt"), root.resolve("small1.txt")),
+        groups.get(1).paths);
+  }
+
+  /**
+   * Test of the lines shown for the groups.
+   */
+  @Test
+  public void formatTest() throws IOException {
+    List<String> lines = new ArrayList<String>();
+    CommandEngine.formatDuplicates(finder.find(root.resolve("a").resolve("b"), () -> false),
+        lines::add);
+    assertEquals(List.of(), lines);
+
+    CommandEngine.formatDuplicates(finder.find(root, () -> false), lines::add);
+    assertEquals(4, lines.size());
+    assertEquals("#2  5 B  " + root.resolve("small1.txt"), lines.get(3));
+  }
+
+  /**
+   * A cancelled search finds nothing more.
+   */
+  @Test
+  public void cancelTest() throws IOException {
+    assertEquals(List.of(), finder.find(root, () -> true));
+  }
+}
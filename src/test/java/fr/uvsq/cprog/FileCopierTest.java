@@ -0,0 +1,129 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the FileCopier class.
+ */
+public class FileCopierTest {
+  Path root;
+
+  /**
+   * Create a directory for the copies.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("copier");
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(root);
+  }
+
+  /**
+   * A large file is copied in several chunks.
+   */
+  @Test
+  public void copyLargeFileTest() throws IOException {
+    byte[] content = new byte[(int) FileCopier.CHUNK_SIZE * 2 + 13];
+    new Random(42).nextBytes(content);
+    Files.write(root.resolve("large"), content);
+    List<Long> chunks = new ArrayList<Long>();
+
+    assertTrue(FileCopier.copyFile(root.resolve("large"), root.resolve("copy"), chunks::add));
+
+    assertArrayEquals(content, Files.readAllBytes(root.resolve("copy")));
+    assertEquals(List.of(FileCopier.CHUNK_SIZE, FileCopier.CHUNK_SIZE, 13L), chunks);
+  }
+
+  /**
+   * The listener can stop the copy, and an existing destination is not overwritten.
+   */
+  @Test
+  public void stopTest() throws IOException {
+    Files.write(root.resolve("file"), new byte[(int) FileCopier.CHUNK_SIZE * 2]);
+
+    assertFalse(FileCopier.copyFile(root.resolve("file"), root.resolve("copy"), bytes -> false));
+    assertEquals(FileCopier.CHUNK_SIZE, Files.size(root.resolve("copy")));
+
+    assertThrows(IOException.class, () -> {
+      FileCopier.copyFile(root.resolve("file"), root.resolve("copy"), bytes -> true);
+    });
+  }
+
+  /**
+   * A move on the same file system is a rename.
+   */
+  @Test
+  public void tryMoveTest() throws IOException {
+    Files.createDirectories(root.resolve("dir/sub"));
+    Files.writeString(root.resolve("dir/sub/file"), "content");
+
+    assertTrue(FileCopier.tryMove(root.resolve("dir"), root.resolve("moved")));
+    assertEquals("content", Files.readString(root.resolve("moved/sub/file")));
+    assertFalse(Files.exists(root.resolve("dir")));
+  }
+
+  /**
+   * A verified copy goes through the buffer and is checked against its source.
+   */
+  @Test
+  public void copyVerifiedTest() throws IOException {
+    byte[] content = new byte[FileCopier.BUFFER_SIZE * 2 + 13];
+    new Random(42).nextBytes(content);
+    Files.write(root.resolve("large"), content);
+    List<Long> chunks = new ArrayList<Long>();
+
+    assertTrue(FileCopier.copyVerified(root.resolve("large"), root.resolve("copy"), chunks::add));
+
+    assertArrayEquals(content, Files.readAllBytes(root.resolve("copy")));
+    assertEquals(List.of((long) FileCopier.BUFFER_SIZE, (long) FileCopier.BUFFER_SIZE, 13L),
+        chunks);
+    assertEquals(FileCopier.checksum(root.resolve("large")),
+        FileCopier.checksum(root.resolve("copy")));
+  }
+
+  /**
+   * A copy which does not match its source is deleted.
+   */
+  @Test
+  public void checksumMismatchTest() throws IOException {
+    Files.write(root.resolve("file"), new byte[FileCopier.BUFFER_SIZE * 2]);
+    Path copy = root.resolve("copy");
+
+    // the first bytes of the copy are changed while the rest is copied
+    IOException exception = assertThrows(IOException.class, () -> {
+      FileCopier.copyVerified(root.resolve("file"), copy, bytes -> {
+        try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+          channel.write(ByteBuffer.wrap(new byte[] {1}), 0);
+        } catch (IOException writeException) {
+          return false;
+        }
+        return true;
+      });
+    });
+    assertTrue(exception.getMessage().contains("does not match"));
+    assertFalse(Files.exists(copy));
+  }
+}
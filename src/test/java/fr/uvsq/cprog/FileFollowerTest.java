@@ -0,0 +1,104 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the FileFollower class.
+ */
+public class FileFollowerTest {
+  Path file;
+
+  /**
+   * Create a log file.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    file = Files.createTempFile("follow", ".log");
+    Files.writeString(file, "first\nsecond\n");
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Files.delete(file);
+  }
+
+  /**
+   * Append the given text to the file.
+   *
+   * @param text to append
+   */
+  private void append(String text) throws IOException {
+    Files.writeString(file, text, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Only the new lines are given by each poll, a line being given once complete.
+   */
+  @Test
+  public void pollTest() throws IOException {
+    try (FileFollower follower = new FileFollower(file)) {
+      assertEquals(List.of("first", "second"), follower.poll());
+      assertEquals(List.of(), follower.poll());
+
+      append("third\r\nfour");
+      assertEquals(List.of("third"), follower.poll());
+      append("th\nfifth\n");
+      assertEquals(List.of("fourth", "fifth"), follower.poll());
+      assertFalse(follower.hasMore());
+    }
+  }
+
+  /**
+   * A large file is followed from its last bytes, starting at a complete line.
+   */
+  @Test
+  public void tailTest() throws IOException {
+    append("x".repeat(FileFollower.TAIL_BYTES) + "\nlast\n");
+    try (FileFollower follower = new FileFollower(file)) {
+      assertEquals(List.of("last"), follower.poll());
+    }
+  }
+
+  /**
+   * A truncated file is read again from its start.
+   */
+  @Test
+  public void truncateTest() throws IOException {
+    try (FileFollower follower = new FileFollower(file)) {
+      follower.poll();
+      Files.writeString(file, "new\n");
+      assertEquals(List.of("new"), follower.poll());
+    }
+  }
+
+  /**
+   * A poll reads a bounded number of bytes, the rest being read by the next ones.
+   */
+  @Test
+  public void boundedPollTest() throws IOException {
+    String line = "y".repeat(99) + "\n";
+    append(line.repeat(FileFollower.MAX_POLL_BYTES / 100 + 10));
+    try (FileFollower follower = new FileFollower(file)) {
+      follower.poll();
+      follower.offset = 0;
+      assertTrue(follower.poll().size() < FileFollower.MAX_POLL_BYTES / 100 + 10);
+      assertTrue(follower.hasMore());
+      assertFalse(follower.poll().isEmpty());
+      assertFalse(follower.hasMore());
+    }
+  }
+}
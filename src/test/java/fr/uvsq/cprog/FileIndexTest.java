@@ -0,0 +1,226 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the FileIndex class.
+ */
+public class FileIndexTest {
+  Path root;
+
+  /**
+   * Create a small tree to index.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("index");
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createFile(root.resolve("a/b/target"));
+    Files.createFile(root.resolve("target"));
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(new FileIndex(root).indexpath);
+    Directory.removeFile(root);
+  }
+
+  /**
+   * The first search builds the index and saves it in the cache directory.
+   */
+  @Test
+  public void findTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    List<Path> found = index.find(new Directory(root), "target").collect(Collectors.toList());
+
+    assertEquals(2, found.size());
+    assertTrue(found.contains(root.resolve("a/b/target")));
+    assertTrue(Files.exists(index.indexpath));
+
+    // only the results under the starting directory
+    found = index.find(new Directory(root.resolve("a")), "target")
+      .collect(Collectors.toList());
+    assertEquals(List.of(root.resolve("a/b/target")), found);
+  }
+
+  /**
+   * The patterns are matched against the indexed names.
+   */
+  @Test
+  public void findPatternTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    List<Path> found = new ArrayList<Path>();
+
+    index.find(new Directory(root), new NameMatcher(NameMatcher.Mode.GLOB, "tar*"),
+        found::add, () -> false);
+    assertEquals(2, found.size());
+
+    found.clear();
+    index.find(new Directory(root), new NameMatcher(NameMatcher.Mode.REGEX, "[ab]"),
+        found::add, () -> false);
+    assertEquals(List.of(root.resolve("a"), root.resolve("a/b")),
+        found.stream().sorted().collect(Collectors.toList()));
+  }
+
+  /**
+   * The index saved on the disk is reused by a new instance.
+   */
+  @Test
+  public void loadTest() throws IOException {
+    new FileIndex(root).find(new Directory(root), "target");
+
+    // not indexed: the saved index is used instead of walking
+    Files.createFile(root.resolve("a/target"));
+    FileIndex index = new FileIndex(root);
+    assertEquals(2, index.find(new Directory(root), "target").count());
+
+    index.update(root.resolve("a/target"));
+    assertEquals(3, index.find(new Directory(root), "target").count());
+  }
+
+  /**
+   * Removing a directory removes everything under it.
+   */
+  @Test
+  public void removeTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    index.find(new Directory(root), "target");
+
+    Directory.removeFile(root.resolve("a"));
+    index.remove(root.resolve("a"));
+
+    assertEquals(List.of(root.resolve("target")),
+        index.find(new Directory(root), "target").collect(Collectors.toList()));
+    assertEquals(0, index.find(new Directory(root), "b").count());
+  }
+
+  /**
+   * Removing a directory keeps the files whose names start with its name.
+   */
+  @Test
+  public void removePrefixTest() throws IOException {
+    Files.createFile(root.resolve("a.txt"));
+    Files.createDirectories(root.resolve("ab"));
+    Files.createFile(root.resolve("ab/target"));
+    FileIndex index = new FileIndex(root);
+    index.find(new Directory(root), "target");
+
+    Directory.removeFile(root.resolve("a"));
+    index.remove(root.resolve("a"));
+
+    assertEquals(List.of(root.resolve("ab/target"), root.resolve("target")),
+        index.find(new Directory(root), "target").sorted().collect(Collectors.toList()));
+    assertEquals(1, index.find(new Directory(root), "a.txt").count());
+  }
+
+  /**
+   * The changes made before the index is loaded are kept in the saved index.
+   */
+  @Test
+  public void pendingTest() throws IOException {
+    new FileIndex(root).find(new Directory(root), "target");
+
+    // a session changing the tree without searching
+    FileIndex index = new FileIndex(root);
+    Files.createDirectories(root.resolve("newdir"));
+    index.update(root.resolve("newdir"));
+    Directory.removeFile(root.resolve("a"));
+    index.remove(root.resolve("a"));
+    index.save();
+
+    index = new FileIndex(root);
+    assertEquals(List.of(root.resolve("newdir")),
+        index.find(new Directory(root), "newdir").collect(Collectors.toList()));
+    assertEquals(0, index.find(new Directory(root), "b").count());
+  }
+
+  /**
+   * Too many changes before the index is loaded make it rebuild itself instead of replaying them.
+   */
+  @Test
+  public void pendingOverflowTest() throws IOException {
+    new FileIndex(root).find(new Directory(root), "target");
+
+    FileIndex index = new FileIndex(root);
+    Files.createFile(root.resolve("new"));
+    for (int i = 0; i <= FileIndex.MAX_PENDING; i++) {
+      index.update(root.resolve("new"));
+    }
+    assertTrue(index.pending.size() < FileIndex.MAX_PENDING);
+    index.save();
+    assertTrue(!Files.exists(index.indexpath));
+
+    assertEquals(1, new FileIndex(root).find(new Directory(root), "new").count());
+  }
+
+  /**
+   * A vanished hit makes the index rebuild itself.
+   */
+  @Test
+  public void staleTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    index.find(new Directory(root), "target");
+
+    Directory.removeFile(root.resolve("target"));
+    Files.createFile(root.resolve("a/target"));
+
+    assertEquals(2, index.find(new Directory(root), "target").count());
+  }
+
+  /**
+   * An index which could not be saved is still used, and saved again later.
+   */
+  @Test
+  public void unsavedTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    // the cache directory would be under a file
+    index.indexpath = root.resolve("target/index");
+    assertEquals(2, index.find(new Directory(root), "target").count());
+    assertTrue(index.dirty);
+
+    Files.delete(root.resolve("target"));
+    assertEquals(1, index.find(new Directory(root), "target").count());
+    index.save();
+    assertTrue(!index.dirty);
+  }
+
+  /**
+   * A cancelled build gives no result and leaves the index unbuilt.
+   */
+  @Test
+  public void cancelledBuildTest() throws IOException {
+    FileIndex index = new FileIndex(root);
+    List<Path> found = new ArrayList<Path>();
+    index.find(new Directory(root), new NameMatcher(NameMatcher.Mode.EXACT, "target"),
+        found::add, () -> true);
+
+    assertEquals(List.of(), found);
+    assertTrue(!Files.exists(index.indexpath));
+    assertEquals(2, index.find(new Directory(root), "target").count());
+  }
+
+  /**
+   * Searching outside of the root walks the directory.
+   */
+  @Test
+  public void outsideRootTest() throws IOException {
+    FileIndex index = new FileIndex(root.resolve("a"));
+    assertEquals(2, index.find(new Directory(root), "target").count());
+    assertTrue(!Files.exists(index.indexpath));
+  }
+}
@@ -0,0 +1,127 @@
+package fr.uvsq.cprog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the FilePager class.
+ */
+public class FilePagerTest {
+  static final int LINES = FilePager.INDEX_STEP * 5 + 17;
+
+  Path file;
+
+  /**
+   * Create a file of several thousand lines.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    file = Files.createTempFile("pager", ".txt");
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      for (int i = 0; i < LINES; i++) {
+        writer.write("line " + i + "\n");
+      }
+    }
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Files.delete(file);
+  }
+
+  /**
+   * Arguments for the lines test: the first line, the number of lines and the expected ones.
+   */
+  static Stream<Arguments> windows() {
+    return Stream.of(
+      Arguments.of(0L, 2, List.of("line 0", "line 1")),
+      Arguments.of(1023L, 3, List.of("line 1023", "line 1024", "line 1025")),
+      Arguments.of(4000L, 1, List.of("line 4000")),
+      Arguments.of((long) LINES - 1, 5, List.of("line " + (LINES - 1))),
+      Arguments.of((long) LINES, 5, List.of())
+    );
+  }
+
+  /**
+   * Read a few lines anywhere in the file.
+   */
+  @ParameterizedTest
+  @MethodSource("windows")
+  public void linesTest(long first, int count, List<String> expected) throws IOException {
+    try (FilePager pager = new FilePager(file)) {
+      assertEquals(expected, pager.lines(first, count));
+      // going back uses the indexed offsets
+      assertEquals(List.of("line 3"), pager.lines(3, 1));
+    }
+  }
+
+  /**
+   * Count the lines, with or without a final line feed.
+   */
+  @Test
+  public void lineCountTest() throws IOException {
+    try (FilePager pager = new FilePager(file)) {
+      assertEquals(LINES, pager.lineCount());
+      assertEquals(List.of("line " + (LINES - 2)), pager.lines(LINES - 2, 1));
+    }
+
+    Files.writeString(file, "first\r\nsecond");
+    try (FilePager pager = new FilePager(file)) {
+      assertEquals(2, pager.lineCount());
+      assertEquals(List.of("first", "second"), pager.lines(0, 10));
+    }
+
+    Files.writeString(file, "");
+    try (FilePager pager = new FilePager(file)) {
+      assertEquals(0, pager.lineCount());
+      assertEquals(List.of(), pager.lines(0, 10));
+    }
+  }
+
+  /**
+   * The file is scanned by another pager whose offsets are then taken.
+   */
+  @Test
+  public void scannedTest() throws IOException {
+    try (FilePager pager = new FilePager(file)) {
+      assertFalse(pager.isScanned(Long.MAX_VALUE));
+      pager.adopt(pager.scanned(Long.MAX_VALUE, () -> true));
+      assertFalse(pager.isScanned(Long.MAX_VALUE));
+
+      pager.adopt(pager.scanned(Long.MAX_VALUE, () -> false));
+      assertTrue(pager.isScanned(Long.MAX_VALUE));
+      assertEquals(LINES, pager.lineCount());
+      assertEquals(List.of("line 4000"), pager.lines(4000, 1));
+    }
+  }
+
+  /**
+   * Long lines are cut.
+   */
+  @Test
+  public void longLineTest() throws IOException {
+    Files.writeString(file, "a".repeat(FilePager.BUFFER_SIZE * 2) + "\nnext\n");
+    try (FilePager pager = new FilePager(file)) {
+      List<String> lines = pager.lines(0, 2);
+      assertEquals(FilePager.MAX_LINE_LENGTH, lines.get(0).length());
+      assertEquals("next", lines.get(1));
+    }
+  }
+}
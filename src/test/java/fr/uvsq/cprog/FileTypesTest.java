@@ -0,0 +1,109 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the FileTypes class.
+ */
+public class FileTypesTest {
+  /**
+   * Arguments for the sniff test: the first bytes of a file and its type.
+   */
+  static Stream<Arguments> headers() {
+    return Stream.of(
+      Arguments.of(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0}, "image/png"),
+      Arguments.of(new byte[] {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0}, "image/jpeg"),
+      Arguments.of("%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII), "application/pdf"),
+      Arguments.of(new byte[] {'P', 'K', 3, 4, 20, 0}, "application/zip"),
+      Arguments.of(new byte[] {0x7f, 'E', 'L', 'F', 2, 1, 1, 0}, "application/x-executable"),
+      Arguments.of(new byte[] {'B', 'M', 0x46, 0, 0, 0, 0, 0, 0, 0, 0x36, 0}, "image/bmp"),
+      Arguments.of(new byte[] {'I', 'D', '3', 4, 0, 0, 0, 0, 0x10, 0x20}, "audio/mpeg"),
+      Arguments.of("BMW and ID3 tags\n".getBytes(StandardCharsets.US_ASCII), FileTypes.TEXT),
+      Arguments.of("BZh, a short note\n".getBytes(StandardCharsets.US_ASCII), FileTypes.TEXT),
+      Arguments.of("une note\nété\tà\r\n".getBytes(StandardCharsets.UTF_8), FileTypes.TEXT),
+      Arguments.of("une note été".getBytes(StandardCharsets.ISO_8859_1), FileTypes.TEXT),
+      Arguments.of(new byte[] {'a', 'b', 0, 'c'}, FileTypes.BINARY),
+      Arguments.of(new byte[] {(byte) 0xc3, (byte) 0x28, (byte) 0xa0, (byte) 0xa1},
+          FileTypes.BINARY),
+      Arguments.of(new byte[0], FileTypes.EMPTY)
+    );
+  }
+
+  /**
+   * Detect the type of a file from its first bytes.
+   */
+  @ParameterizedTest
+  @MethodSource("headers")
+  public void sniffTest(byte[] header, String type) {
+    assertEquals(type, FileTypes.sniff(header, header.length));
+  }
+
+  /**
+   * A character cut at the end of the header does not make the file binary.
+   */
+  @Test
+  public void cutCharacterTest() {
+    byte[] bytes = "abé".getBytes(StandardCharsets.UTF_8);
+    assertEquals(FileTypes.TEXT, FileTypes.sniff(bytes, bytes.length - 1));
+  }
+
+  /**
+   * The types of the test files, a file being read again only when it changed.
+   */
+  @Test
+  public void detectTest() throws IOException {
+    FileTypes fileTypes = new FileTypes();
+    assertEquals(FileTypes.TEXT, fileTypes.detect(Paths.get("test/samples.txt")));
+    assertEquals("image/jpeg", fileTypes.detect(Paths.get("test/github_profil.jpg")));
+    assertEquals(FileTypes.EMPTY, fileTypes.detect(Paths.get("test/pic.png")));
+    assertEquals(FileTypes.DIRECTORY, fileTypes.detect(Paths.get("test/subtest")));
+
+    Path file = Files.createTempFile("types", "");
+    try {
+      Files.writeString(file, "text");
+      assertEquals(FileTypes.TEXT, fileTypes.detect(file));
+      Files.write(file, new byte[] {'%', 'P', 'D', 'F', '-'});
+      Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+      assertEquals("application/pdf", fileTypes.detect(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * A named pipe is typed without being opened, and an empty file is shown as a text.
+   */
+  @Test
+  public void specialTest() throws IOException, InterruptedException {
+    assertTrue(FileTypes.showsAsText(FileTypes.EMPTY));
+    assertFalse(FileTypes.isViewable(FileTypes.DIRECTORY));
+
+    Path directory = Files.createTempDirectory("types");
+    Path fifo = directory.resolve("fifo");
+    try {
+      Process mkfifo = new ProcessBuilder("mkfifo", fifo.toString()).start();
+      assumeTrue(mkfifo.waitFor() == 0 && Files.exists(fifo));
+      String type = new FileTypes().detect(fifo);
+      assertEquals(FileTypes.SPECIAL, type);
+      assertFalse(FileTypes.isViewable(type));
+    } finally {
+      Files.deleteIfExists(fifo);
+      Files.delete(directory);
+    }
+  }
+}
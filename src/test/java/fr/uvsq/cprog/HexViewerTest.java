@@ -0,0 +1,118 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the HexViewer class.
+ */
+public class HexViewerTest {
+  static final int SIZE = HexViewer.BUFFER_SIZE * 2 + 20;
+
+  Path file;
+  HexViewer viewer;
+
+  /**
+   * Create a binary file larger than the buffer, with a pattern across two buffers.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    byte[] bytes = new byte[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      bytes[i] = (byte) (i % 7);
+    }
+    bytes[0] = 'P';
+    bytes[1] = 'K';
+    bytes[HexViewer.BUFFER_SIZE - 1] = (byte) 0xde;
+    bytes[HexViewer.BUFFER_SIZE] = (byte) 0xad;
+    file = Files.createTempFile("hex", ".bin");
+    Files.write(file, bytes);
+    viewer = new HexViewer(file);
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    viewer.close();
+    Files.delete(file);
+  }
+
+  /**
+   * Test of the formatting of the lines.
+   */
+  @Test
+  public void linesTest() throws IOException {
+    List<String> lines = viewer.lines(0, 2);
+    assertEquals(2, lines.size());
+    assertEquals("00000000  50 4b 02 03 04 05 06 00  01 02 03 04 05 06 00 01  |PK..............|",
+        lines.get(0));
+    assertEquals((SIZE + 15) / 16, viewer.lineCount());
+
+    // the last line is not complete
+    lines = viewer.lines(viewer.lineCount() - 1, 10);
+    assertEquals(1, lines.size());
+    assertEquals(String.format("%08x", SIZE - 4), lines.get(0).substring(0, 8));
+    assertEquals(List.of(), viewer.lines(viewer.lineCount(), 10));
+  }
+
+  /**
+   * Arguments for the search test: the pattern, the start offset and the expected offset.
+   */
+  static Stream<Arguments> searches() {
+    return Stream.of(
+      Arguments.of("\"PK\"", 0L, 0L),
+      Arguments.of("\"PK\"", 1L, -1L),
+      Arguments.of("de ad", 0L, (long) HexViewer.BUFFER_SIZE - 1),
+      Arguments.of("0506000102", 0L, 5L),
+      Arguments.of("0506000102", 6L, 12L),
+      Arguments.of("0506000102", (long) SIZE - 10, (long) SIZE - 5),
+      Arguments.of("0506000102", (long) SIZE - 4, -1L)
+    );
+  }
+
+  /**
+   * Test of the search, including across two buffers.
+   */
+  @ParameterizedTest
+  @MethodSource("searches")
+  public void searchTest(String pattern, long from, long expected) throws IOException {
+    assertEquals(expected, viewer.search(HexViewer.parsePattern(pattern), from));
+  }
+
+  /**
+   * A cancelled search stops before reading the file.
+   */
+  @Test
+  public void cancelTest() throws IOException {
+    assertEquals(-1, viewer.search(HexViewer.parsePattern("\"PK\""), 0, () -> true));
+    assertEquals(0, viewer.search(HexViewer.parsePattern("\"PK\""), 0, () -> false));
+  }
+
+  /**
+   * Test of the parsing of the patterns and of the offsets.
+   */
+  @Test
+  public void parseTest() {
+    assertArrayEquals(new byte[] {(byte) 0xde, (byte) 0xad}, HexViewer.parsePattern("dEaD"));
+    assertThrows(IllegalArgumentException.class, () -> HexViewer.parsePattern("abc"));
+    assertThrows(IllegalArgumentException.class, () -> HexViewer.parsePattern("zz"));
+    assertEquals(31, HexViewer.parseOffset("0x1f"));
+    assertEquals(31, HexViewer.parseOffset("31"));
+    assertThrows(IllegalArgumentException.class, () -> HexViewer.parseOffset("-1"));
+  }
+}
@@ -0,0 +1,88 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the Metrics class.
+ */
+public class MetricsTest {
+  /**
+   * Arguments for the bucket test: a value and the highest value of its bucket.
+   */
+  static Stream<Arguments> buckets() {
+    return Stream.of(
+      Arguments.of(0L, 0L),
+      Arguments.of(15L, 15L),
+      Arguments.of(16L, 16L),
+      Arguments.of(33L, 33L),
+      Arguments.of(1000L, 1023L),
+      Arguments.of(1_000_000L, 1_015_807L),
+      Arguments.of(Long.MAX_VALUE, Long.MAX_VALUE)
+    );
+  }
+
+  /**
+   * Test of the buckets, which are at most 1/16 of their values wide.
+   */
+  @ParameterizedTest
+  @MethodSource("buckets")
+  public void bucketTest(long value, long highest) {
+    int bucket = Metrics.Histogram.bucketOf(value);
+    assertEquals(highest, Metrics.Histogram.highestOf(bucket));
+    assertTrue(highest - value <= value / Metrics.Histogram.SUB_BUCKETS);
+    if (bucket > 0) {
+      assertTrue(Metrics.Histogram.highestOf(bucket - 1) < value);
+    }
+  }
+
+  /**
+   * Test of the percentiles of a histogram.
+   */
+  @Test
+  public void percentileTest() {
+    Metrics.Histogram histogram = new Metrics.Histogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500_500, histogram.mean());
+    assertEquals(1_000_000, histogram.max());
+    long median = histogram.percentile(0.5);
+    assertTrue(median >= 500_000 && median <= 500_000 * 17 / 16, "median " + median);
+    long p99 = histogram.percentile(0.99);
+    assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 " + p99);
+    assertEquals(1_000_000, histogram.percentile(1));
+  }
+
+  /**
+   * Test of the counters and of the report written to a file.
+   */
+  @Test
+  public void reportTest() throws IOException {
+    Metrics metrics = new Metrics();
+    metrics.add(Metrics.BYTES_COPIED, 10);
+    metrics.add(Metrics.BYTES_COPIED, 5);
+    metrics.time("command find", System.nanoTime() - 2_000_000);
+    assertEquals(15, metrics.get(Metrics.BYTES_COPIED));
+    assertEquals(0, metrics.get(Metrics.ENTRIES_WALKED));
+
+    Path file = Files.createTempFile("metrics", ".txt");
+    metrics.writeTo(file);
+    List<String> lines = Files.readAllLines(file);
+    Files.delete(file);
+    assertEquals(3, lines.size());
+    assertEquals("bytes copied: 15", lines.get(1));
+    assertTrue(lines.get(2).startsWith("command find: 1 calls, mean 2."), lines.get(2));
+  }
+}
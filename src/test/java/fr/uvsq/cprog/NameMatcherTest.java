@@ -0,0 +1,88 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the NameMatcher class.
+ */
+public class NameMatcherTest {
+  /**
+   * Arguments for the matches Test.
+   */
+  static Stream<Arguments> matchesArgs() {
+    return  Stream.of(
+    Arguments.of(NameMatcher.Mode.EXACT, "doc.md", "doc.md", true),
+    Arguments.of(NameMatcher.Mode.EXACT, "doc", "doc.md", false),
+    Arguments.of(NameMatcher.Mode.GLOB, "*.md", "doc.md", true),
+    Arguments.of(NameMatcher.Mode.GLOB, "*.{png,jpg}", "doc.md", false),
+    Arguments.of(NameMatcher.Mode.REGEX, "d.c\\.m.", "doc.md", true),
+    Arguments.of(NameMatcher.Mode.REGEX, "doc", "doc.md", false),
+    Arguments.of(NameMatcher.Mode.FUZZY, "dcmd", "doc.md", true),
+    Arguments.of(NameMatcher.Mode.FUZZY, "DMC", "doc.md", false)
+    );
+  }
+
+  /**
+   * Check each mode against a name.
+   */
+  @ParameterizedTest
+  @MethodSource("matchesArgs")
+  public void matchesTest(NameMatcher.Mode mode, String pattern, String name, boolean expected) {
+    NameMatcher matcher = new NameMatcher(mode, pattern);
+    assertEquals(expected, matcher.matches(Paths.get(name)));
+  }
+
+  /**
+   * An invalid regex is refused when compiled.
+   */
+  @Test
+  public void invalidRegexTest() {
+    assertThrows(IllegalArgumentException.class, () -> {
+      new NameMatcher(NameMatcher.Mode.REGEX, "(");
+    });
+  }
+
+  /**
+   * Consecutive characters and a match at the start score higher.
+   */
+  @Test
+  public void scoreTest() {
+    NameMatcher matcher = new NameMatcher(NameMatcher.Mode.FUZZY, "doc");
+    assertTrue(matcher.score("doc.md") > matcher.score("d_o_c.md"));
+    assertTrue(matcher.score("doc.md") > matcher.score("a_doc.md"));
+    assertEquals(-1, matcher.score("cod"));
+  }
+
+  /**
+   * A fuzzy search only keeps the best matches, the best first.
+   */
+  @Test
+  public void fuzzySearchTest() throws IOException {
+    NameMatcher matcher = new NameMatcher(NameMatcher.Mode.FUZZY, "ab");
+    List<Path> found = new ArrayList<Path>();
+
+    matcher.search((action, cancelled) -> {
+      action.accept(Paths.get("x_a_b"));
+      for (int i = 0; i < NameMatcher.FUZZY_LIMIT; i++) {
+        action.accept(Paths.get("a_b" + i));
+      }
+      action.accept(Paths.get("ab"));
+    }, found::add, () -> false);
+
+    assertEquals(NameMatcher.FUZZY_LIMIT, found.size());
+    assertEquals(Paths.get("ab"), found.get(0));
+    assertTrue(!found.contains(Paths.get("x_a_b")));
+  }
+}
@@ -0,0 +1,163 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the NotesDatabase class.
+ */
+public class NotesDatabaseTest {
+  Path root;
+  NotesDatabase database;
+
+  /**
+   * Create a tree with notes in several directories.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("notesdb").toRealPath();
+    Files.createDirectories(root.resolve("a/b"));
+    addNote(root, "old.c", "Deprecated, use new.c");
+    addNote(root.resolve("a"), "api.md", "Public API, not deprecated");
+    addNote(root.resolve("a/b"), "draft.txt", "Draft of the deprecation notice");
+    database = new NotesDatabase(new FileIndex(root));
+  }
+
+  /**
+   * Save a note in the given directory.
+   *
+   * @param directory where the annotated file is
+   * @param filename of the annotated file
+   * @param note to add
+   */
+  private static void addNote(Path directory, String filename, String note) throws IOException {
+    Notes notes = new Notes(directory.toString());
+    notes.addNote(filename, note);
+    notes.saveNotes(directory.toString());
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    Directory.removeFile(database.dbpath);
+    Directory.removeFile(database.index.indexpath);
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Arguments for the search test: a query and the files found relative to the root.
+   */
+  static Stream<Arguments> queries() {
+    return Stream.of(
+      Arguments.of("deprecated", List.of("a/api.md", "old.c")),
+      Arguments.of("DEPRECATED api", List.of("a/api.md")),
+      Arguments.of("deprecat*", List.of("a/api.md", "a/b/draft.txt", "old.c")),
+      Arguments.of("new.c", List.of("old.c")),
+      Arguments.of("missing", List.of()),
+      Arguments.of("  ", List.of())
+    );
+  }
+
+  /**
+   * Search the notes of the whole tree.
+   */
+  @ParameterizedTest
+  @MethodSource("queries")
+  public void searchTest(String query, List<String> expected) throws IOException {
+    assertEquals(expected.stream().map(root::resolve).toList(), database.search(query));
+  }
+
+  /**
+   * The changes of the notes are indexed and saved with the database.
+   */
+  @Test
+  public void setTest() throws IOException {
+    database.search("deprecated");
+    database.set(root.resolve("old.c"), "");
+    database.set(root.resolve("a/b/draft.txt"), "deprecated draft");
+    assertEquals(List.of(root.resolve("a/api.md"), root.resolve("a/b/draft.txt")),
+        database.search("deprecated"));
+
+    database.save();
+    assertTrue(Files.exists(database.dbpath));
+    NotesDatabase loaded = new NotesDatabase(new FileIndex(root));
+    assertEquals(List.of(root.resolve("a/b/draft.txt")), loaded.search("draft"));
+    assertEquals(List.of(), loaded.search("notice"));
+  }
+
+  /**
+   * The notes set before the database is loaded are kept in the saved database.
+   */
+  @Test
+  public void setBeforeLoadTest() throws IOException {
+    database.search("deprecated");
+
+    // a session changing a note without searching
+    NotesDatabase session = new NotesDatabase(new FileIndex(root));
+    session.set(root.resolve("a/b/draft.txt"), "deprecated draft");
+    session.set(root.resolve("old.c"), "");
+    session.save();
+
+    NotesDatabase loaded = new NotesDatabase(new FileIndex(root));
+    assertEquals(List.of(root.resolve("a/api.md"), root.resolve("a/b/draft.txt")),
+        loaded.search("deprecated"));
+  }
+
+  /**
+   * A note set while the database is rebuilt does not wait for the rebuild and is kept.
+   */
+  @Test
+  public void setDuringBuildTest() throws IOException {
+    NotesDatabase[] session = new NotesDatabase[1];
+    session[0] = new NotesDatabase(new FileIndex(root) {
+      @Override
+      public List<Path> find(NameMatcher matcher) throws IOException {
+        Thread thread = new Thread(() -> session[0].set(root.resolve("old.c"), "changed"));
+        thread.start();
+        try {
+          thread.join(5000);
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+        assertFalse(thread.isAlive());
+        return super.find(matcher);
+      }
+    });
+
+    assertEquals(List.of(root.resolve("old.c")), session[0].search("changed"));
+    assertEquals(List.of(root.resolve("a/api.md"), root.resolve("a/b/draft.txt")),
+        session[0].search("deprecat*"));
+  }
+
+  /**
+   * The notes under a pasted directory are found under its copy, and only there once it is cut.
+   */
+  @Test
+  public void pasteTest() throws IOException {
+    database.search("draft");
+    database.paste(root.resolve("a"), root.resolve("c"), false);
+    assertEquals(List.of(root.resolve("a/b/draft.txt"), root.resolve("c/b/draft.txt")),
+        database.search("draft"));
+
+    // pasted before the database is loaded
+    NotesDatabase session = new NotesDatabase(new FileIndex(root));
+    session.paste(root.resolve("a/b"), root.resolve("d"), true);
+    assertEquals(List.of(root.resolve("d/draft.txt")), session.search("draft"));
+    assertEquals(List.of(root.resolve("a/api.md")), session.search("api"));
+  }
+}
@@ -2,12 +2,16 @@ package fr.uvsq.cprog;
 
 import java.io.IOException;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.stream.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
@@ -76,6 +80,7 @@ public class NotesTest {
    */
   @Test
   public void saveNoteTest() throws IOException {
+    byte[] saved = Files.readAllBytes(Paths.get(testDirname, "notes"));
     Notes notes = new Notes(testDirname);
 
     notes.addNote("filename", "a note");
@@ -88,6 +93,8 @@ public class NotesTest {
     // clean up
     notes.removeNote("filename");
     notes.saveNotes(testDirname);
+    assertEquals(notes.getNote("filename"), new Notes(testDirname).getNote("filename"));
+    Files.write(Paths.get(testDirname, "notes"), saved);
   }
 
   /**
@@ -121,4 +128,83 @@ public class NotesTest {
     notes.removeNote("1");
     notes.saveNotes(emptyDirname);
   }
+
+  /**
+   * The notes are only written when they changed, without leaving a temporary file.
+   */
+  @Test
+  public void dirtyTest() throws IOException {
+    new File(emptyDirname).mkdir();
+    Notes notes = new Notes(emptyDirname);
+    assertFalse(notes.saveNotes(emptyDirname));
+
+    notes.addNote("file", "une note é");
+    assertTrue(notes.saveNotes(emptyDirname));
+    assertFalse(notes.saveNotes(emptyDirname));
+    assertArrayEquals(new String[] {"notes"}, new File(emptyDirname).list());
+
+    notes = new Notes(emptyDirname);
+    assertEquals("une note é", notes.getNote("file"));
+    notes.removeNote("other");
+    assertFalse(notes.saveNotes(emptyDirname));
+
+    // clean up
+    notes.removeNote("file");
+    assertTrue(notes.saveNotes(emptyDirname));
+    assertFalse(new File(emptyDirname, "notes").exists());
+  }
+
+  /**
+   * The changes are appended to the file and replayed when it is read.
+   */
+  @Test
+  public void journalTest() throws IOException {
+    new File(emptyDirname).mkdir();
+    Path filepath = Paths.get(emptyDirname, "notes");
+    Notes notes = new Notes(emptyDirname);
+    notes.addNote("a", "first");
+    notes.addNote("b", "note");
+    notes.saveNotes(emptyDirname);
+    byte[] before = Files.readAllBytes(filepath);
+
+    notes = new Notes(emptyDirname);
+    notes.addNote("a", "second");
+    notes.removeNote("b");
+    notes.saveNotes(emptyDirname);
+    byte[] after = Files.readAllBytes(filepath);
+
+    assertArrayEquals(before, Arrays.copyOf(after, before.length));
+    notes = new Notes(emptyDirname);
+    assertEquals("first\nsecond", notes.getNote("a"));
+    assertEquals("", notes.getNote("b"));
+
+    // clean up
+    notes.removeNote("a");
+    notes.saveNotes(emptyDirname);
+  }
+
+  /**
+   * A journal made mostly of outdated records is rewritten in the background.
+   */
+  @Test
+  public void compactionTest() throws IOException {
+    new File(emptyDirname).mkdir();
+    Path filepath = Paths.get(emptyDirname, "notes");
+    Notes notes = new Notes(emptyDirname);
+    notes.addNote("kept", "note");
+    // the first save writes one record, the next ones append two: the last one compacts
+    for (int i = 0; i <= Notes.COMPACTION_MIN_RECORDS / 2; i++) {
+      notes.addNote("removed", "note " + i);
+      notes.removeNote("removed");
+      notes.saveNotes(emptyDirname);
+    }
+    Notes.awaitCompactions();
+
+    assertEquals("kept\u001fnote\u001e", Files.readString(filepath));
+    assertArrayEquals(new String[] {"notes"}, new File(emptyDirname).list());
+    assertEquals("note", new Notes(emptyDirname).getNote("kept"));
+
+    // clean up
+    Files.delete(filepath);
+  }
 }
@@ -0,0 +1,81 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the ParallelWalker class.
+ */
+public class ParallelWalkerTest {
+  /**
+   * The walker finds the same paths as a sequential walk, whatever its parallelism.
+   */
+  @ParameterizedTest
+  @ValueSource(ints = {1, 2, 8})
+  public void findTest(int parallelism) throws IOException {
+    ParallelWalker walker = new ParallelWalker(parallelism);
+    Path start = Paths.get("test").toAbsolutePath();
+
+    Set<Path> expected = Files.find(start, 128, (path, attributes) -> true)
+        .collect(Collectors.toSet());
+    Set<Path> found = walker.find(start, (path, attributes) -> true)
+        .collect(Collectors.toSet());
+
+    assertEquals(expected, found);
+    walker.shutdown();
+  }
+
+  /**
+   * Only the paths accepted by the matcher are returned.
+   */
+  @Test
+  public void matcherTest() throws IOException {
+    ParallelWalker walker = new ParallelWalker();
+    Path start = Paths.get("test").toAbsolutePath();
+
+    Set<Path> found = walker.find(start,
+        (path, attributes) -> path.getFileName().toString().equals("notes"))
+        .collect(Collectors.toSet());
+
+    assertEquals(Set.of(start.resolve("notes"), start.resolve("subtest/notes")), found);
+  }
+
+  /**
+   * A cancelled walk does not list any directory.
+   */
+  @Test
+  public void cancelTest() throws IOException {
+    ParallelWalker walker = new ParallelWalker();
+    Path start = Paths.get("test").toAbsolutePath();
+    ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<Path>();
+
+    walker.walk(start, (path, attributes) -> true, found::add, () -> true);
+
+    assertEquals(List.of(start), List.copyOf(found));
+  }
+
+  /**
+   * The walk fails if the start does not exist or the parallelism is invalid.
+   */
+  @Test
+  public void failTest() {
+    assertThrows(IOException.class, () -> {
+      new ParallelWalker().find(Paths.get("nofile"), (path, attributes) -> true);
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      new ParallelWalker(0);
+    });
+  }
+}
@@ -1,6 +1,7 @@
 package fr.uvsq.cprog;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.stream.*;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -24,6 +25,8 @@ import org.junit.jupiter.api.Test;
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class SessionTest {
   static Session session;
+  static byte[] testNotes;
+  static byte[] subtestNotes;
 
   /**
    * Constructor Test when the commandline is empty. 
@@ -31,6 +34,9 @@ public class SessionTest {
   @Test
   @BeforeAll
   public static void ConstructorTest() throws IOException {
+    // the notes are journaled, keep the files to restore them
+    testNotes = Files.readAllBytes(Paths.get("test/notes"));
+    subtestNotes = Files.readAllBytes(Paths.get("test/subtest/notes"));
     session = new Session("test/subtest");
   }
 
@@ -53,6 +59,10 @@ public class SessionTest {
     Arguments.of("find dir"),
     Arguments.of("1 + une note"),
     Arguments.of("1 -"),
+    Arguments.of("search une note"),
+    Arguments.of("du"),
+    Arguments.of("dupes"),
+    Arguments.of("jobs"),
     Arguments.of("paste")
     );
   }
@@ -86,8 +96,16 @@ public class SessionTest {
    * Clean up.
    */
   @AfterAll
-  public static void cleanUp() throws IOException {
+  public static void cleanUp() throws IOException, InterruptedException {
+    // wait for the background copies
+    while (session.copyEngine.isActive()) {
+      Thread.sleep(10);
+    }
     Directory.removeFile(Paths.get("test/subtest/dir"));
     Directory.removeFile(Paths.get("test/subtest/dir-copy"));
+    Directory.removeFile(session.index.indexpath);
+    Directory.removeFile(session.notesDatabase.dbpath);
+    Files.write(Paths.get("test/notes"), testNotes);
+    Files.write(Paths.get("test/subtest/notes"), subtestNotes);
   }
 }
@@ -0,0 +1,133 @@
+package fr.uvsq.cprog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the TreeCopier class.
+ */
+public class TreeCopierTest {
+  static final int DIRECTORIES = 5;
+  static final int FILES = 40;
+
+  Path root;
+  TreeCopier copier;
+
+  /**
+   * Create a tree of small files.
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("tree");
+    for (int dir = 0; dir < DIRECTORIES; dir++) {
+      Path directory = Files.createDirectories(root.resolve("src/dir" + dir));
+      for (int file = 0; file < FILES; file++) {
+        Files.writeString(directory.resolve("file" + file), dir + "-" + file);
+      }
+    }
+    Files.createDirectories(root.resolve("src/empty/sub"));
+    copier = new TreeCopier(4);
+  }
+
+  /**
+   * Clean up.
+   */
+  @AfterEach
+  public void cleanUp() throws IOException {
+    copier.shutdown();
+    Directory.removeFile(root);
+  }
+
+  /**
+   * Every file and directory is copied.
+   */
+  @Test
+  public void copyTest() throws IOException {
+    Path destination = root.resolve("copy");
+    List<String> errors = copier.copy(root.resolve("src"), destination,
+        (from, to) -> Files.copy(from, to), () -> false);
+
+    assertTrue(errors.isEmpty());
+    assertTrue(Files.isDirectory(destination.resolve("empty/sub")));
+    for (int dir = 0; dir < DIRECTORIES; dir++) {
+      for (int file = 0; file < FILES; file++) {
+        assertEquals(dir + "-" + file,
+            Files.readString(destination.resolve("dir" + dir + "/file" + file)));
+      }
+    }
+  }
+
+  /**
+   * A file which could not be copied is reported without stopping the others.
+   */
+  @Test
+  public void errorTest() throws IOException {
+    Path destination = root.resolve("copy");
+    Files.createDirectories(destination.resolve("dir1"));
+    Files.writeString(destination.resolve("dir1/file3"), "already there");
+
+    List<String> errors = copier.copy(root.resolve("src"), destination,
+        (from, to) -> Files.copy(from, to), () -> false);
+
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0).startsWith(Path.of("dir1", "file3").toString()));
+    assertEquals("already there", Files.readString(destination.resolve("dir1/file3")));
+    assertEquals("4-39", Files.readString(destination.resolve("dir4/file39")));
+  }
+
+  /**
+   * A directory which could not be created or read skips its subtree only.
+   */
+  @Test
+  public void directoryErrorTest() throws IOException {
+    Path destination = root.resolve("copy");
+    Files.createDirectories(destination);
+    Files.writeString(destination.resolve("dir1"), "not a directory");
+    Path unreadable = root.resolve("src/dir2");
+    unreadable.toFile().setReadable(false);
+
+    try {
+      List<String> errors = copier.copy(root.resolve("src"), destination,
+          (from, to) -> Files.copy(from, to), () -> false);
+
+      assertTrue(errors.stream().anyMatch(error -> error.startsWith("dir1")));
+      // the permissions are not checked for root
+      assertEquals(Files.isReadable(unreadable) ? 1 : 2, errors.size());
+      assertEquals("4-39", Files.readString(destination.resolve("dir4/file39")));
+    } finally {
+      unreadable.toFile().setReadable(true);
+    }
+  }
+
+  /**
+   * A cancelled copy skips the remaining files.
+   */
+  @Test
+  public void cancelTest() throws IOException {
+    Path destination = root.resolve("copy");
+    List<String> errors = copier.copy(root.resolve("src"), destination,
+        (from, to) -> Files.copy(from, to), () -> true);
+
+    assertTrue(errors.isEmpty());
+    assertTrue(Files.isDirectory(destination.resolve("dir0")));
+    assertFalse(Files.exists(destination.resolve("dir0/file0")));
+  }
+
+  /**
+   * The number of threads must be positive.
+   */
+  @Test
+  public void parallelismTest() {
+    assertThrows(IllegalArgumentException.class, () -> new TreeCopier(0));
+  }
+}